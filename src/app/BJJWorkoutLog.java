@@ -1,21 +1,91 @@
 package app;
 
+import io.ChangeFeed;
+import io.ColumnarExporter;
+import io.DuplicateWorkoutException;
 import io.JsonlRepository;
+import io.LogVerifier;
+import io.ObservableRepository;
+import io.PartitionedRepository;
+import io.WorkoutHit;
+import io.WorkoutQuery;
 import io.WorkoutRepository;
+import model.Belt;
 import model.Round;
 import model.Workout;
-
+import stats.GroupBy;
+import stats.MatchupTable;
+import stats.RollupEngine;
+import stats.TrainingTotals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.SortedMap;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class BJJWorkoutLog {
 
     public static void main(String[] args) {
         Scanner in = new Scanner(System.in);
-        WorkoutRepository repo = new JsonlRepository();
+
+        // --athlete <id> logs into that athlete's partition under data/athletes/
+        String athleteId = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--athlete")) athleteId = args[i + 1];
+        }
+
+        Path dataDir = Path.of("data");
+        ObservableRepository repo;
+        PartitionedRepository athletes = null;
+        try {
+            if (athleteId != null) {
+                athletes = new PartitionedRepository(dataDir.resolve("athletes"));
+                repo = athletes.forAthlete(athleteId);
+                dataDir = athletes.partitionDir(athleteId);
+                System.out.println("Athlete: " + athleteId);
+            } else {
+                repo = new ObservableRepository(WorkoutRepository.open(dataDir));
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        RollupEngine rollups = new RollupEngine(repo);
+        repo.addListener(rollups);
+        MatchupTable matchups = new MatchupTable(repo);
+        repo.addListener(matchups);
+        try {
+            repo.addListener(new ChangeFeed(repo, dataDir, 200));
+        } catch (Exception e) {
+            System.err.println("Warning: change feed disabled: " + e.getMessage());
+        }
+
+        // keep the decoded-model snapshot fresh so the next launch doesn't re-parse the log
+        // (JSONL logs only; the binary format loads quickly without one)
+        JsonlRepository store = repo.delegate() instanceof JsonlRepository j ? j : null;
+        ScheduledExecutorService snapshotTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (store != null) {
+            snapshotTimer.scheduleWithFixedDelay(() -> saveSnapshot(store), 5, 5, TimeUnit.MINUTES);
+        }
+        // the athlete catalog is saved in batches rather than on every write
+        PartitionedRepository catalogOwner = athletes;
+        if (catalogOwner != null) {
+            snapshotTimer.scheduleWithFixedDelay(() -> flushCatalog(catalogOwner), 1, 1, TimeUnit.MINUTES);
+        }
 
         while (true) {
             System.out.println("\n=== BJJ Workout Log ===");
@@ -23,12 +93,15 @@ public class BJJWorkoutLog {
             System.out.println("2) View recent workouts (detailed)");
             System.out.println("3) Update existing workout (by date)");
             System.out.println("4) Update workout (by ID)");
-            System.out.println("5) Export CSV");
+            System.out.println("5) Export (CSV / columnar)");
             System.out.println("6) Stats (basic)");
             System.out.println("7) Delete workout (by ID)");
             System.out.println("8) List recent workouts (summary)");
-            System.out.println("9) Quit");
-            int choice = promptIntRange(in, "Choose an option (1-9): ", 1, 9);
+            System.out.println("9) Trends (weekly/monthly/yearly)");
+            System.out.println("10) Matchup analytics");
+            System.out.println("11) Maintenance");
+            System.out.println("12) Quit");
+            int choice = promptIntRange(in, "Choose an option (1-12): ", 1, 12);
 
             try {
                 if (choice == 1) {
@@ -40,14 +113,25 @@ public class BJJWorkoutLog {
                 } else if (choice == 4) {
                     updateWorkoutById(in, repo);
                 } else if (choice == 5) {
-                    exportCsv(repo);
+                    int format = promptIntRange(in, "Format (1=CSV, 2=Columnar for analytics): ", 1, 2);
+                    if (format == 1) exportCsv(repo, dataDir);
+                    else exportColumnar(repo, dataDir);
                 } else if (choice == 6) {
                     showStats(repo);
                 } else if (choice == 7) {
                     deleteWorkoutById(in, repo);
                 } else if (choice == 8) {
                     listRecentSummary(in, repo);
+                } else if (choice == 9) {
+                    showTrends(in, rollups);
+                } else if (choice == 10) {
+                    showMatchups(in, matchups);
+                } else if (choice == 11) {
+                    maintenance(in, repo);
                 } else {
+                    snapshotTimer.shutdown();
+                    saveSnapshot(store);
+                    flushCatalog(athletes);
                     System.out.println("Good training. See you next time!");
                     break;
                 }
@@ -65,7 +149,12 @@ public class BJJWorkoutLog {
     private static void addWorkout(Scanner input, WorkoutRepository repo) throws Exception {
         System.out.println("\n-- Add Workout --");
         Workout w = promptWorkout(input);
-        repo.append(w);
+        try {
+            repo.append(w);
+        } catch (DuplicateWorkoutException dup) {
+            System.out.println("\nThat workout is already in the log; nothing saved.");
+            return;
+        }
         System.out.println("\n--- Workout Saved ---");
         System.out.println("ID:     " + w.id);
         System.out.println("Date:   " + w.date);
@@ -73,74 +162,46 @@ public class BJJWorkoutLog {
         System.out.println("Drills: " + w.drills);
         System.out.println("Rounds: " + w.roundsCount);
         System.out.println("Notes:  " + w.notes);
-        System.out.println("Appended to: data/workouts.jsonl");
+        System.out.println("Appended to: " + repo.dataFile());
     }
 
     private static void viewRecent(Scanner input, WorkoutRepository repo) throws Exception {
         System.out.println("\n-- View Recent Workouts (detailed) --");
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        if (repo.count() == 0) {
             System.out.println("No workouts found yet. Log one first!");
             return;
         }
 
         int n = promptIntRange(input, "How many most recent workouts to show? ", 1, 1000);
-        int start = Math.max(0, lines.size() - n);
-        List<String> slice = lines.subList(start, lines.size());
+        List<WorkoutHit> slice = repo.query(WorkoutQuery.all().latest(n));
 
         System.out.println("\n--- Showing " + slice.size() + " workout(s) ---");
-        for (int i = 0; i < slice.size(); i++) {
-            String json = slice.get(i);
-
-            String id   = JsonlRepository.extract(json, "\"id\":\"", "\"");
-            String date = JsonlRepository.extract(json, "\"date\":\"", "\"");
-            String workoutType = JsonlRepository.extract(json, "\"workoutType\":\"", "\"");
-            String drills = JsonlRepository.extract(json, "\"drills\":\"", "\"");
-            String roundsCountStr = JsonlRepository.extract(json, "\"roundsCount\":", ",");
-            String notes = JsonlRepository.extract(json, "\"notes\":\"", "\"");
-
-            if (roundsCountStr == null) roundsCountStr = "0";
-            int roundsCount = JsonlRepository.safeInt(roundsCountStr);
-            if (notes == null) notes = "";
-
-            System.out.println("\n#" + (start + i + 1));
-            System.out.println("ID:     " + (id != null && !id.isEmpty() ? id : "(no id)"));
-            System.out.println("Date:   " + (date != null ? date : "(unknown)"));
-            System.out.println("Type:   " + (workoutType != null ? workoutType : "(unknown)"));
-            System.out.println("Drills: " + (drills != null ? drills : "(unknown)"));
-            System.out.println("Rounds: " + roundsCount);
+        for (WorkoutHit hit : slice) {
+            Workout w = hit.workout;
+            String notes = nz(w.notes);
+
+            System.out.println("\n#" + (hit.line + 1));
+            System.out.println("ID:     " + (w.id != null && !w.id.isEmpty() ? w.id : "(no id)"));
+            System.out.println("Date:   " + (w.date != null ? w.date : "(unknown)"));
+            System.out.println("Type:   " + (w.workoutType != null ? w.workoutType : "(unknown)"));
+            System.out.println("Drills: " + (w.drills != null ? w.drills : "(unknown)"));
+            System.out.println("Rounds: " + w.roundsCount);
             if (!notes.isEmpty()) {
                 System.out.println("Notes:  " + notes);
             }
 
-            String roundsBlock = JsonlRepository.extract(json, "\"rounds\":[", "],\"notes\"");
-            if (roundsBlock != null && !roundsBlock.trim().isEmpty()) {
-                List<String> roundObjects = JsonlRepository.splitRoundObjects(roundsBlock);
+            if (!w.rounds.isEmpty()) {
                 System.out.println("Round details:");
-                for (int rIndex = 0; rIndex < roundObjects.size(); rIndex++) {
-                    String rj = roundObjects.get(rIndex);
-
-                    String belt = JsonlRepository.extract(rj, "\"beltLevel\":\"", "\"");
-                    String size = JsonlRepository.extract(rj, "\"partnerSize\":\"", "\"");
-                    String ageStr = JsonlRepository.extract(rj, "\"partnerAge\":", ",");
-                    String durStr = JsonlRepository.extract(rj, "\"roundDurationMinutes\":", ",");
-                    String subForStr = JsonlRepository.extract(rj, "\"timesYouSubmittedPartner\":", ",");
-                    String subAgainstStr = JsonlRepository.extract(rj, "\"timesYouWereSubmitted\":", ",");
-                    String obs = JsonlRepository.extract(rj, "\"observations\":\"", "\"");
-
-                    int age = JsonlRepository.safeInt(ageStr);
-                    int dur = JsonlRepository.safeInt(durStr);
-                    int subFor = JsonlRepository.safeInt(subForStr);
-                    int subAgainst = JsonlRepository.safeInt(subAgainstStr);
-
+                for (int rIndex = 0; rIndex < w.rounds.size(); rIndex++) {
+                    Round r = w.rounds.get(rIndex);
                     System.out.println("  Round " + (rIndex + 1) + ": "
-                            + "belt=" + (belt == null ? "?" : belt)
-                            + ", size=" + (size == null ? "?" : size)
-                            + ", age=" + age
-                            + ", dur=" + dur + "m"
-                            + ", subs for/against=" + subFor + "/" + subAgainst);
-                    if (obs != null && !obs.isEmpty()) {
-                        System.out.println("    Notes: " + obs);
+                            + "belt=" + (r.beltLevel == null ? "?" : r.beltLevel)
+                            + ", size=" + (r.partnerSize == null ? "?" : r.partnerSize)
+                            + ", age=" + r.partnerAge
+                            + ", dur=" + r.roundDurationMinutes + "m"
+                            + ", subs for/against=" + r.timesYouSubmittedPartner + "/" + r.timesYouWereSubmitted);
+                    if (r.observations != null && !r.observations.isEmpty()) {
+                        System.out.println("    Notes: " + r.observations);
                     }
                 }
             }
@@ -150,40 +211,30 @@ public class BJJWorkoutLog {
 
     private static void listRecentSummary(Scanner input, WorkoutRepository repo) throws Exception {
         System.out.println("\n-- List Recent Workouts (summary) --");
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        if (repo.count() == 0) {
             System.out.println("No workouts found yet. Log one first!");
             return;
         }
 
         int n = promptIntRange(input, "How many most recent workouts to list? ", 1, 1000);
-        int start = Math.max(0, lines.size() - n);
-        List<String> slice = lines.subList(start, lines.size());
+        List<WorkoutHit> slice = repo.query(WorkoutQuery.all()
+                .fields("id", "date", "workoutType", "drills", "roundsCount")
+                .latest(n));
 
         System.out.println("\n--- Summary of " + slice.size() + " workout(s) ---");
-        for (int i = 0; i < slice.size(); i++) {
-            String json = slice.get(i);
-
-            String id   = JsonlRepository.extract(json, "\"id\":\"", "\"");
-            String date = JsonlRepository.extract(json, "\"date\":\"", "\"");
-            String workoutType = JsonlRepository.extract(json, "\"workoutType\":\"", "\"");
-            String drills = JsonlRepository.extract(json, "\"drills\":\"", "\"");
-            String roundsCountStr = JsonlRepository.extract(json, "\"roundsCount\":", ",");
-
-            if (roundsCountStr == null) roundsCountStr = "0";
-            int roundsCount = JsonlRepository.safeInt(roundsCountStr);
-
-            String idDisplay = (id != null && !id.isEmpty()) ? id : "(no id)";
-            String dateDisplay = (date != null) ? date : "(unknown)";
-            String typeDisplay = (workoutType != null) ? workoutType : "(unknown)";
-            String drillsDisplay = (drills != null) ? drills : "";
+        for (WorkoutHit hit : slice) {
+            Workout w = hit.workout;
+            String idDisplay = (w.id != null && !w.id.isEmpty()) ? w.id : "(no id)";
+            String dateDisplay = (w.date != null) ? w.date : "(unknown)";
+            String typeDisplay = (w.workoutType != null) ? w.workoutType : "(unknown)";
+            String drillsDisplay = (w.drills != null) ? w.drills : "";
 
             System.out.println(
-                    "#" + (start + i + 1)
+                    "#" + (hit.line + 1)
                     + " | ID=" + idDisplay
                     + " | Date=" + dateDisplay
                     + " | Type=" + typeDisplay
-                    + " | Rounds=" + roundsCount
+                    + " | Rounds=" + w.roundsCount
                     + " | Drills=" + drillsDisplay
             );
         }
@@ -192,8 +243,7 @@ public class BJJWorkoutLog {
 
     private static void updateByDate(Scanner input, WorkoutRepository repo) throws Exception {
         System.out.println("\n-- Update Existing Workout (by date) --");
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        if (repo.count() == 0) {
             System.out.println("No workouts found.");
             return;
         }
@@ -204,37 +254,29 @@ public class BJJWorkoutLog {
             return;
         }
 
-        List<Integer> matches = new ArrayList<>();
-        for (int i = 0; i < lines.size(); i++) {
-            String json = lines.get(i);
-            String date = JsonlRepository.extract(json, "\"date\":\"", "\"");
-            if (dateQuery.equals(date)) matches.add(i);
-        }
+        List<WorkoutHit> matches = repo.query(WorkoutQuery.all().date(dateQuery));
 
         if (matches.isEmpty()) {
             System.out.println("No workouts found for date " + dateQuery + ".");
             return;
         }
 
-        int targetIndex;
+        WorkoutHit target;
         if (matches.size() == 1) {
-            targetIndex = matches.get(0);
+            target = matches.get(0);
             System.out.println("Found 1 workout for " + dateQuery + ".");
         } else {
             System.out.println("Found " + matches.size() + " workouts for " + dateQuery + ":");
             for (int k = 0; k < matches.size(); k++) {
-                int idx = matches.get(k);
-                String json = lines.get(idx);
-                String drills = JsonlRepository.extract(json, "\"drills\":\"", "\"");
-                String roundsCount = JsonlRepository.extract(json, "\"roundsCount\":", ",");
-                System.out.println((k + 1) + ") line " + (idx + 1) + " | drills=" + nz(drills) + " | rounds=" + nz(roundsCount));
+                WorkoutHit hit = matches.get(k);
+                System.out.println((k + 1) + ") line " + (hit.line + 1) + " | drills=" + nz(hit.workout.drills) + " | rounds=" + hit.workout.roundsCount);
             }
-            targetIndex = promptIntRange(input, "Select which to update (1-" + matches.size() + "): ", 1, matches.size()) - 1;
-            targetIndex = matches.get(targetIndex);
+            int pick = promptIntRange(input, "Select which to update (1-" + matches.size() + "): ", 1, matches.size()) - 1;
+            target = matches.get(pick);
         }
 
         System.out.println("\nCurrent entry:");
-        System.out.println(lines.get(targetIndex));
+        System.out.println(target.workout.toJson());
         String ok = promptString(input, "Replace this entry? (y/n): ").toLowerCase();
         if (!ok.startsWith("y")) {
             System.out.println("Update cancelled.");
@@ -243,14 +285,13 @@ public class BJJWorkoutLog {
 
         System.out.println("\n-- Enter replacement workout --");
         Workout replacement = promptWorkout(input);
-        repo.replaceLine(targetIndex, replacement);
-        System.out.println("Updated workout at line " + (targetIndex + 1) + " for date " + dateQuery + ".");
+        repo.replaceLine(target.line, replacement);
+        System.out.println("Updated workout at line " + (target.line + 1) + " for date " + dateQuery + ".");
     }
 
     private static void updateWorkoutById(Scanner input, WorkoutRepository repo) throws Exception {
         System.out.println("\n-- Update Workout (by ID) --");
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        if (repo.count() == 0) {
             System.out.println("No workouts found.");
             return;
         }
@@ -261,37 +302,23 @@ public class BJJWorkoutLog {
             return;
         }
 
-        int targetIndex = -1;
-        String targetJson = null;
-
-        for (int i = 0; i < lines.size(); i++) {
-            String json = lines.get(i);
-            String id = JsonlRepository.extract(json, "\"id\":\"", "\"");
-            if (idQuery.equals(id)) {
-                targetIndex = i;
-                targetJson = json;
-                break;
-            }
-        }
-
-        if (targetIndex == -1) {
+        List<WorkoutHit> found = repo.query(WorkoutQuery.all()
+                .id(idQuery)
+                .fields("date", "workoutType", "drills", "roundsCount")
+                .limit(1));
+        if (found.isEmpty()) {
             System.out.println("No workout found with ID: " + idQuery);
             return;
         }
-
-        String date = JsonlRepository.extract(targetJson, "\"date\":\"", "\"");
-        String workoutType = JsonlRepository.extract(targetJson, "\"workoutType\":\"", "\"");
-        String drills = JsonlRepository.extract(targetJson, "\"drills\":\"", "\"");
-        String roundsCountStr = JsonlRepository.extract(targetJson, "\"roundsCount\":", ",");
-        if (roundsCountStr == null) roundsCountStr = "0";
-        int roundsCount = JsonlRepository.safeInt(roundsCountStr);
+        WorkoutHit target = found.get(0);
+        Workout current = target.workout;
 
         System.out.println("\nWorkout to update:");
         System.out.println("ID:     " + idQuery);
-        System.out.println("Date:   " + (date == null ? "(unknown)" : date));
-        System.out.println("Type:   " + (workoutType == null ? "(unknown)" : workoutType));
-        System.out.println("Drills: " + (drills == null ? "(unknown)" : drills));
-        System.out.println("Rounds: " + roundsCount);
+        System.out.println("Date:   " + (current.date == null ? "(unknown)" : current.date));
+        System.out.println("Type:   " + (current.workoutType == null ? "(unknown)" : current.workoutType));
+        System.out.println("Drills: " + (current.drills == null ? "(unknown)" : current.drills));
+        System.out.println("Rounds: " + current.roundsCount);
 
         String ok = promptString(input, "Replace this workout with new data? (y/n): ").toLowerCase();
         if (!ok.startsWith("y")) {
@@ -303,20 +330,20 @@ public class BJJWorkoutLog {
         Workout replacement = promptWorkout(input);
         // preserve the original ID
         replacement.id = idQuery;
-        repo.replaceLine(targetIndex, replacement);
+        repo.replaceLine(target.line, replacement);
         System.out.println("Updated workout with ID " + idQuery + ".");
     }
 
-    private static void exportCsv(WorkoutRepository repo) throws Exception {
+    // exports go next to the log, so an athlete's land in their partition directory
+    private static void exportCsv(WorkoutRepository repo, Path dataDir) throws Exception {
         System.out.println("\n-- Export CSV --");
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        if (repo.count() == 0) {
             System.out.println("No workouts found.");
             return;
         }
 
-        java.nio.file.Path workoutsCsv = java.nio.file.Path.of("data", "workouts.csv");
-        java.nio.file.Path roundsCsv   = java.nio.file.Path.of("data", "rounds.csv");
+        java.nio.file.Path workoutsCsv = dataDir.resolve("workouts.csv");
+        java.nio.file.Path roundsCsv   = dataDir.resolve("rounds.csv");
 
         try (java.io.BufferedWriter wcsv = java.nio.file.Files.newBufferedWriter(
                     workoutsCsv,
@@ -334,56 +361,17 @@ public class BJJWorkoutLog {
                     + "timesYouWereSubmitted,submissionTypesAgainst,timesYouSubmittedPartner,"
                     + "submissionTypesFor,observations\n");
 
-            for (String json : lines) {
-                String date   = JsonlRepository.extract(json, "\"date\":\"", "\"");
-                String workoutType = JsonlRepository.extract(json, "\"workoutType\":\"", "\"");
-                String drills = JsonlRepository.extract(json, "\"drills\":\"", "\"");
-                String roundsCountStr = JsonlRepository.extract(json, "\"roundsCount\":", ",");
-                String notes = JsonlRepository.extract(json, "\"notes\":\"", "\"");
-                if (date == null) date = "";
-                if (workoutType == null) workoutType = "";
-                if (drills == null) drills = "";
-                if (roundsCountStr == null) roundsCountStr = "0";
-                if (notes == null) notes = "";
-                int roundsCount = JsonlRepository.safeInt(roundsCountStr);
-
-                wcsv.write(csv(date) + "," + csv(workoutType) + "," + csv(drills) + "," + roundsCount + "," + csv(notes) + "\n");
-
-                String roundsBlock = JsonlRepository.extract(json, "\"rounds\":[", "],\"notes\"");
-                if (roundsBlock == null || roundsBlock.trim().isEmpty()) continue;
-
-                List<String> roundObjects = JsonlRepository.splitRoundObjects(roundsBlock);
-                for (int idx = 0; idx < roundObjects.size(); idx++) {
-                    String rj = roundObjects.get(idx);
-                    String beltLevel = JsonlRepository.extract(rj, "\"beltLevel\":\"", "\"");
-                    String partnerSize = JsonlRepository.extract(rj, "\"partnerSize\":\"", "\"");
-                    String partnerAgeStr = JsonlRepository.extract(rj, "\"partnerAge\":", ",");
-                    String durStr = JsonlRepository.extract(rj, "\"roundDurationMinutes\":", ",");
-                    String timesYouWereSubmittedStr = JsonlRepository.extract(rj, "\"timesYouWereSubmitted\":", ",");
-                    String submissionTypesAgainst = JsonlRepository.extract(rj, "\"submissionTypesAgainst\":\"", "\"");
-                    String timesYouSubmittedPartnerStr = JsonlRepository.extract(rj, "\"timesYouSubmittedPartner\":", ",");
-                    String submissionTypesFor = JsonlRepository.extract(rj, "\"submissionTypesFor\":\"", "\"");
-                    String observations = JsonlRepository.extract(rj, "\"observations\":\"", "\"");
-
-                    int partnerAge = JsonlRepository.safeInt(partnerAgeStr);
-                    int dur = JsonlRepository.safeInt(durStr);
-                    int timesYouWereSubmitted = JsonlRepository.safeInt(timesYouWereSubmittedStr);
-                    int timesYouSubmittedPartner = JsonlRepository.safeInt(timesYouSubmittedPartnerStr);
-
-                    rcsv.write(
-                        csv(date) + "," +
-                        (idx + 1) + "," +
-                        csv(nz(beltLevel)) + "," +
-                        csv(nz(partnerSize)) + "," +
-                        partnerAge + "," +
-                        dur + "," +
-                        timesYouWereSubmitted + "," +
-                        csv(nz(submissionTypesAgainst)) + "," +
-                        timesYouSubmittedPartner + "," +
-                        csv(nz(submissionTypesFor)) + "," +
-                        csv(nz(observations)) + "\n"
-                    );
-                }
+            // one record at a time, straight from the decoded fields
+            try {
+                repo.forEachWorkout(w -> {
+                    try {
+                        writeCsvRows(w, wcsv, rcsv);
+                    } catch (java.io.IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                });
+            } catch (java.io.UncheckedIOException e) {
+                throw e.getCause();
             }
         }
 
@@ -392,92 +380,68 @@ public class BJJWorkoutLog {
         System.out.println(" - " + roundsCsv.toAbsolutePath());
     }
 
+    private static void writeCsvRows(Workout w, java.io.BufferedWriter wcsv, java.io.BufferedWriter rcsv)
+            throws java.io.IOException {
+        String date = nz(w.date);
+        wcsv.write(csv(date) + "," + csv(nz(w.workoutType)) + "," + csv(nz(w.drills)) + ","
+                + nz(w.roundsCount) + "," + csv(nz(w.notes)) + "\n");
+
+        if (w.rounds == null) return;
+        for (int idx = 0; idx < w.rounds.size(); idx++) {
+            Round r = w.rounds.get(idx);
+            rcsv.write(
+                csv(date) + "," +
+                (idx + 1) + "," +
+                csv(nz(r.beltLevel)) + "," +
+                csv(nz(r.partnerSize)) + "," +
+                nz(r.partnerAge) + "," +
+                nz(r.roundDurationMinutes) + "," +
+                nz(r.timesYouWereSubmitted) + "," +
+                csv(nz(r.submissionTypesAgainst)) + "," +
+                nz(r.timesYouSubmittedPartner) + "," +
+                csv(nz(r.submissionTypesFor)) + "," +
+                csv(nz(r.observations)) + "\n"
+            );
+        }
+    }
+
+    private static void exportColumnar(WorkoutRepository repo, Path dataDir) throws Exception {
+        System.out.println("\n-- Export Columnar --");
+        Path file = dataDir.resolve("workouts.bjjc");
+        ColumnarExporter.Result r = ColumnarExporter.export(repo, file);
+        if (r.workouts == 0) {
+            System.out.println("No workouts found.");
+            return;
+        }
+        System.out.println("Wrote " + r.workouts + " workouts and " + r.rounds + " rounds in "
+                + r.rowGroups + " row group(s) to " + file);
+    }
+
     private static void showStats(WorkoutRepository repo) throws Exception {
         System.out.println("\n-- Stats (basic) --");
 
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        List<Workout> all = repo.readAllWorkouts();
+        if (all.isEmpty()) {
             System.out.println("No workouts found yet. Log one first!");
             return;
         }
 
-        int totalWorkouts = lines.size();
+        int totalWorkouts = all.size();
         int totalRounds = 0;
         int totalSubFor = 0;
         int totalSubAgainst = 0;
         int totalDurationMinutes = 0;
         int roundsWithDuration = 0;
 
-        // per-belt stats
-        int whiteRounds = 0, whiteFor = 0, whiteAgainst = 0;
-        int blueRounds  = 0, blueFor  = 0, blueAgainst  = 0;
-        int purpleRounds= 0, purpleFor= 0, purpleAgainst= 0;
-        int brownRounds = 0, brownFor = 0, brownAgainst = 0;
-        int blackRounds = 0, blackFor = 0, blackAgainst = 0;
-        int otherRounds = 0, otherFor = 0, otherAgainst = 0;
-
-        for (String json : lines) {
-            String roundsCountStr = JsonlRepository.extract(json, "\"roundsCount\":", ",");
-            int roundsCount = JsonlRepository.safeInt(roundsCountStr);
-            totalRounds += roundsCount;
-
-            String roundsBlock = JsonlRepository.extract(json, "\"rounds\":[", "],\"notes\"");
-            if (roundsBlock == null || roundsBlock.trim().isEmpty()) {
-                continue;
-            }
-
-            List<String> roundObjects = JsonlRepository.splitRoundObjects(roundsBlock);
-            for (String rj : roundObjects) {
-                String subForStr = JsonlRepository.extract(rj, "\"timesYouSubmittedPartner\":", ",");
-                String subAgainstStr = JsonlRepository.extract(rj, "\"timesYouWereSubmitted\":", ",");
-                String durStr = JsonlRepository.extract(rj, "\"roundDurationMinutes\":", ",");
-                String belt = JsonlRepository.extract(rj, "\"beltLevel\":\"", "\"");
-
-                int subFor = JsonlRepository.safeInt(subForStr);
-                int subAgainst = JsonlRepository.safeInt(subAgainstStr);
-                int dur = JsonlRepository.safeInt(durStr);
-
-                totalSubFor += subFor;
-                totalSubAgainst += subAgainst;
-
-                if (dur > 0) {
-                    totalDurationMinutes += dur;
+        for (Workout w : all) {
+            totalRounds += w.roundsCount;
+            for (Round r : w.rounds) {
+                totalSubFor += r.timesYouSubmittedPartner;
+                totalSubAgainst += r.timesYouWereSubmitted;
+                if (r.roundDurationMinutes > 0) {
+                    totalDurationMinutes += r.roundDurationMinutes;
                     roundsWithDuration++;
                 }
-
-                String normBelt = (belt == null ? "" : belt.trim().toLowerCase());
-                switch (normBelt) {
-                    case "white" -> {
-                        whiteRounds++;
-                        whiteFor += subFor;
-                        whiteAgainst += subAgainst;
-                    }
-                    case "blue" -> {
-                        blueRounds++;
-                        blueFor += subFor;
-                        blueAgainst += subAgainst;
-                    }
-                    case "purple" -> {
-                        purpleRounds++;
-                        purpleFor += subFor;
-                        purpleAgainst += subAgainst;
-                    }
-                    case "brown" -> {
-                        brownRounds++;
-                        brownFor += subFor;
-                        brownAgainst += subAgainst;
-                    }
-                    case "black" -> {
-                        blackRounds++;
-                        blackFor += subFor;
-                        blackAgainst += subAgainst;
-                    }
-                    default -> {
-                        otherRounds++;
-                        otherFor += subFor;
-                        otherAgainst += subAgainst;
-                    }
-                }
             }
         }
 
@@ -496,21 +460,95 @@ public class BJJWorkoutLog {
             System.out.println("Avg round duration:      (no duration data yet)");
         }
 
+        Map<String, TrainingTotals> byBelt = GroupBy.aggregateWorkouts(all, GroupBy.Key.BELT);
         System.out.println("\nRounds & submissions by partner belt:");
-        printBeltLine("White",  whiteRounds,  whiteFor,  whiteAgainst);
-        printBeltLine("Blue",   blueRounds,   blueFor,   blueAgainst);
-        printBeltLine("Purple", purpleRounds, purpleFor, purpleAgainst);
-        printBeltLine("Brown",  brownRounds,  brownFor,  brownAgainst);
-        printBeltLine("Black",  blackRounds,  blackFor,  blackAgainst);
-        printBeltLine("Other/Unknown", otherRounds, otherFor, otherAgainst);
+        for (Belt b : Belt.values()) {
+            TrainingTotals t = byBelt.getOrDefault(b.label, new TrainingTotals());
+            printBeltLine(b.label, t.rounds, t.subsFor, t.subsAgainst);
+        }
 
         System.out.println("-- End of stats --");
     }
 
+    private static void showTrends(Scanner input, RollupEngine rollups) throws Exception {
+        System.out.println("\n-- Trends --");
+        System.out.println("  1) Weekly");
+        System.out.println("  2) Monthly");
+        System.out.println("  3) Yearly");
+        int p = promptIntRange(input, "Choose period (1-3): ", 1, 3);
+        RollupEngine.Period period = p == 1 ? RollupEngine.Period.WEEK
+                : p == 2 ? RollupEngine.Period.MONTH
+                : RollupEngine.Period.YEAR;
+        int back = promptIntRange(input, "How many periods back? ", 1, 520);
+
+        LocalDate to = LocalDate.now();
+        LocalDate from = switch (period) {
+            case WEEK -> to.minusWeeks(back - 1);
+            case MONTH -> to.minusMonths(back - 1);
+            case YEAR -> to.minusYears(back - 1);
+        };
+        from = RollupEngine.periodStart(period, from);
+
+        SortedMap<LocalDate, TrainingTotals> rows = rollups.rollup(period, from, to);
+        if (rows.isEmpty()) {
+            System.out.println("No workouts in that range.");
+            return;
+        }
+
+        System.out.println("\nPeriod      Workouts Rounds  Mins  Subs for/vs  Rate for/vs   Gi/No-gi");
+        for (Map.Entry<LocalDate, TrainingTotals> e : rows.entrySet()) {
+            TrainingTotals t = e.getValue();
+            System.out.printf("%-11s %8d %6d %5d  %4d/%-4d    %4.2f/%-4.2f    %d/%d%n",
+                    periodLabel(period, e.getKey()), t.workouts, t.rounds, t.minutes,
+                    t.subsFor, t.subsAgainst, t.subForRate(), t.subAgainstRate(),
+                    t.giRounds, t.noGiRounds);
+        }
+        System.out.println("-- End of trends --");
+    }
+
+    private static void showMatchups(Scanner input, MatchupTable matchups) throws Exception {
+        System.out.println("\n-- Matchup Analytics --");
+        System.out.println("Break down by:");
+        System.out.println("  1) Partner belt");
+        System.out.println("  2) Partner size");
+        System.out.println("  3) Partner age");
+        System.out.println("  4) Gi / No-gi");
+        MatchupTable.Dim dim = MatchupTable.Dim.values()[promptIntRange(input, "Choose (1-4): ", 1, 4) - 1];
+
+        int belt = -1;
+        if (dim != MatchupTable.Dim.BELT) {
+            StringBuilder prompt = new StringBuilder("Only partner belt (0=any");
+            for (Belt b : Belt.values()) prompt.append(", ").append(b.ordinal() + 1).append('=').append(b.label);
+            belt = promptIntRange(input, prompt.append("): ").toString(), 0, Belt.values().length) - 1;
+        }
+        int type = -1;
+        if (dim != MatchupTable.Dim.TYPE) {
+            type = promptIntRange(input, "Only workout type (0=any, 1=Gi, 2=No-gi): ", 0, 2) - 1;
+        }
+
+        MatchupTable.MatchupStats[] rows = matchups.breakdown(dim, belt, -1, -1, type);
+        boolean any = false;
+        for (int i = 0; i < rows.length; i++) {
+            MatchupTable.MatchupStats m = rows[i];
+            if (m.rounds == 0) continue;
+            any = true;
+            System.out.printf("%n%-14s rounds=%4d  subs for/vs=%d/%d  rate for/vs=%.2f/%.2f  avg dur=%.1f min%n",
+                    MatchupTable.label(dim, i) + ":", m.rounds, m.subsFor, m.subsAgainst,
+                    m.subForRate(), m.subAgainstRate(), m.avgDuration());
+            List<String> topFor = m.topFor(3);
+            List<String> topAgainst = m.topAgainst(3);
+            if (!topFor.isEmpty()) System.out.println("    top subs for: " + String.join(", ", topFor));
+            if (!topAgainst.isEmpty()) System.out.println("    top subs vs:  " + String.join(", ", topAgainst));
+        }
+        if (!any) {
+            System.out.println("No rounds match those filters.");
+        }
+        System.out.println("-- End of matchups --");
+    }
+
     private static void deleteWorkoutById(Scanner input, WorkoutRepository repo) throws Exception {
         System.out.println("\n-- Delete Workout (by ID) --");
-        List<String> lines = repo.readAllJsonLines();
-        if (lines.isEmpty()) {
+        if (repo.count() == 0) {
             System.out.println("No workouts found.");
             return;
         }
@@ -521,37 +559,23 @@ public class BJJWorkoutLog {
             return;
         }
 
-        int targetIndex = -1;
-        String targetJson = null;
-
-        for (int i = 0; i < lines.size(); i++) {
-            String json = lines.get(i);
-            String id = JsonlRepository.extract(json, "\"id\":\"", "\"");
-            if (idQuery.equals(id)) {
-                targetIndex = i;
-                targetJson = json;
-                break;
-            }
-        }
-
-        if (targetIndex == -1) {
+        List<WorkoutHit> found = repo.query(WorkoutQuery.all()
+                .id(idQuery)
+                .fields("date", "workoutType", "drills", "roundsCount")
+                .limit(1));
+        if (found.isEmpty()) {
             System.out.println("No workout found with ID: " + idQuery);
             return;
         }
-
-        String date = JsonlRepository.extract(targetJson, "\"date\":\"", "\"");
-        String workoutType = JsonlRepository.extract(targetJson, "\"workoutType\":\"", "\"");
-        String drills = JsonlRepository.extract(targetJson, "\"drills\":\"", "\"");
-        String roundsCountStr = JsonlRepository.extract(targetJson, "\"roundsCount\":", ",");
-        if (roundsCountStr == null) roundsCountStr = "0";
-        int roundsCount = JsonlRepository.safeInt(roundsCountStr);
+        WorkoutHit target = found.get(0);
+        Workout current = target.workout;
 
         System.out.println("\nWorkout to delete:");
         System.out.println("ID:     " + idQuery);
-        System.out.println("Date:   " + (date == null ? "(unknown)" : date));
-        System.out.println("Type:   " + (workoutType == null ? "(unknown)" : workoutType));
-        System.out.println("Drills: " + (drills == null ? "(unknown)" : drills));
-        System.out.println("Rounds: " + roundsCount);
+        System.out.println("Date:   " + (current.date == null ? "(unknown)" : current.date));
+        System.out.println("Type:   " + (current.workoutType == null ? "(unknown)" : current.workoutType));
+        System.out.println("Drills: " + (current.drills == null ? "(unknown)" : current.drills));
+        System.out.println("Rounds: " + current.roundsCount);
 
         String ok = promptString(input, "Are you sure you want to delete this workout? (y/n): ").toLowerCase();
         if (!ok.startsWith("y")) {
@@ -559,10 +583,79 @@ public class BJJWorkoutLog {
             return;
         }
 
-        repo.deleteLine(targetIndex);
+        repo.deleteLine(target.line);
         System.out.println("Workout deleted.");
     }
 
+    private static void maintenance(Scanner input, ObservableRepository repo) throws Exception {
+        System.out.println("\n-- Maintenance --");
+        System.out.println("1) Import workouts from a JSONL file");
+        System.out.println("2) Remove duplicate workouts");
+        System.out.println("3) Sort log by date");
+        System.out.println("4) Verify log integrity");
+        System.out.println("5) Verify and repair (quarantine bad records)");
+        System.out.println("6) Back");
+        int choice = promptIntRange(input, "Choose (1-6): ", 1, 6);
+
+        if (choice == 1) {
+            String file = promptString(input, "Path to JSONL file: ");
+            Path path = Path.of(file);
+            if (!Files.exists(path)) {
+                System.out.println("No such file: " + file);
+                return;
+            }
+            int added = 0;
+            int skipped = 0;
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                Workout w = JsonlRepository.parseWorkout(line);
+                if (w.id == null || w.id.isBlank()) w.id = UUID.randomUUID().toString();
+                if (repo.appendIfAbsent(w)) added++;
+                else skipped++;
+            }
+            System.out.println("Imported " + added + " workout(s); skipped " + skipped + " already in the log.");
+        } else if (choice == 2) {
+            int removed = repo.dedupe();
+            System.out.println(removed == 0 ? "No duplicates found." : "Removed " + removed + " duplicate workout(s).");
+        } else if (choice == 3) {
+            int sorted = repo.sortByDate();
+            System.out.println(sorted == 0 ? "Log is already in date order." : "Sorted " + sorted + " workout(s) by date.");
+        } else if (choice == 4 || choice == 5) {
+            LogVerifier.Report r = choice == 4 ? repo.verify() : repo.repair();
+            printVerifyReport(r, choice == 5);
+        }
+    }
+
+    private static void printVerifyReport(LogVerifier.Report r, boolean repaired) {
+        double mb = r.bytes / (1024.0 * 1024.0);
+        double secs = Math.max(r.millis, 1) / 1000.0;
+        System.out.printf("Scanned %d record(s), %.1f MB in %d ms (%.0f MB/s).%n", r.records, mb, r.millis, mb / secs);
+        if (r.noChecksums) {
+            System.out.println("No checksums were stored yet; records were checked for well-formed JSON only.");
+        } else if (r.checked < r.records) {
+            System.out.println((r.records - r.checked) + " record(s) had no checksum yet and were checked for well-formed JSON only.");
+        }
+        if (r.missing > 0) {
+            System.out.println("The log is " + r.missing + " record(s) shorter than when it was last written; "
+                    + "restore from the .bak copy in the data directory if they matter.");
+        }
+        int shown = 0;
+        for (LogVerifier.Problem p : r.bad) {
+            if (shown++ == 20) {
+                System.out.println("  ... and " + (r.bad.size() - 20) + " more");
+                break;
+            }
+            System.out.println("  line " + (p.line + 1) + " (byte " + p.offset + "): " + p.reason);
+        }
+        if (r.bad.isEmpty()) {
+            System.out.println(r.missing == 0 ? "All records are intact." : "The remaining records are intact.");
+        } else if (repaired) {
+            System.out.println("Moved " + r.bad.size() + " bad record(s) to data/workouts.quarantine.jsonl and rebuilt the indexes.");
+        } else {
+            System.out.println(r.bad.size() + " bad record(s) found. Use \"Verify and repair\" to quarantine them.");
+        }
+    }
+
     // ---------- Prompts & helpers ----------
 
     private static Workout promptWorkout(Scanner input) {
@@ -717,6 +810,10 @@ public class BJJWorkoutLog {
         return s == null ? "" : s;
     }
 
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+
     private static String csv(String s) {
         String x = (s == null) ? "" : s;
         boolean needsQuotes = x.contains(",") || x.contains("\"") || x.contains("\n") || x.contains("\r");
@@ -724,6 +821,32 @@ public class BJJWorkoutLog {
         return x;
     }
 
+    private static void saveSnapshot(JsonlRepository store) {
+        if (store == null) return;
+        try {
+            store.saveSnapshot();
+        } catch (Exception e) {
+            System.err.println("Warning: couldn't save snapshot: " + e.getMessage());
+        }
+    }
+
+    private static void flushCatalog(PartitionedRepository athletes) {
+        if (athletes == null) return;
+        try {
+            athletes.flushCatalog();
+        } catch (Exception e) {
+            System.err.println("Warning: couldn't save athlete catalog: " + e.getMessage());
+        }
+    }
+
+    private static String periodLabel(RollupEngine.Period period, LocalDate start) {
+        return switch (period) {
+            case WEEK -> "wk " + start;
+            case MONTH -> start.toString().substring(0, 7);
+            case YEAR -> String.valueOf(start.getYear());
+        };
+    }
+
     private static void printBeltLine(String label, int rounds, int subFor, int subAgainst) {
         System.out.printf("  %-14s rounds=%3d  subs for=%3d  subs vs=%3d%n",
                 label + ":", rounds, subFor, subAgainst);
@@ -0,0 +1,40 @@
+package app;
+
+import io.PartitionedRepository;
+import model.Belt;
+import stats.TrainingTotals;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+// Gym-wide stats across every athlete partition in data/athletes/.
+//   java -cp out app.GymStats
+public class GymStats {
+
+    public static void main(String[] args) {
+        Path root = Path.of(args.length > 0 ? args[0] : "data/athletes");
+        try {
+            PartitionedRepository athletes = new PartitionedRepository(root);
+
+            System.out.println("-- Athletes --");
+            int totalWorkouts = 0;
+            for (PartitionedRepository.CatalogEntry e : athletes.catalog()) {
+                System.out.printf("  %-20s workouts=%4d  last=%s%n",
+                        e.athleteId, e.workouts, e.lastDate == null ? "-" : e.lastDate);
+                totalWorkouts += e.workouts;
+            }
+            System.out.println("Total workouts: " + totalWorkouts);
+
+            Map<String, TrainingTotals> byBelt = athletes.gymStatsByBelt();
+            System.out.println("\nGym-wide rounds & submissions by partner belt:");
+            for (Belt b : Belt.values()) {
+                TrainingTotals t = byBelt.getOrDefault(b.label, new TrainingTotals());
+                System.out.printf("  %-14s rounds=%5d  subs for=%5d  subs vs=%5d  mins=%6d%n",
+                        b.label + ":", t.rounds, t.subsFor, t.subsAgainst, t.minutes);
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
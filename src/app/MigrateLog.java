@@ -0,0 +1,23 @@
+package app;
+
+import io.BinaryRepository;
+
+import java.nio.file.Path;
+
+// Converts a JSONL workout log to the binary format (workouts.bin).
+//   java -cp out app.MigrateLog              # data/
+//   java -cp out app.MigrateLog data/athletes/alice
+public class MigrateLog {
+
+    public static void main(String[] args) {
+        Path dataDir = Path.of(args.length > 0 ? args[0] : "data");
+        try {
+            int n = BinaryRepository.migrate(dataDir);
+            System.out.println("Converted " + n + " workout(s) to " + BinaryRepository.binFile(dataDir)
+                    + "; the old log is kept as workouts.jsonl.migrated.");
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package app;
+
+import io.FollowerReplicator;
+
+import java.nio.file.Path;
+
+// Brings a reporting copy of the log up to date from data/'s change feed.
+//   java -cp out app.ReplicaSync /mnt/reports/bjj-data
+public class ReplicaSync {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplicaSync <follower-dir> [leader-dir]");
+            System.exit(2);
+        }
+        Path followerDir = Path.of(args[0]);
+        Path leaderDir = Path.of(args.length > 1 ? args[1] : "data");
+
+        try {
+            FollowerReplicator replicator = new FollowerReplicator(leaderDir, followerDir);
+            int applied = replicator.catchUp();
+            System.out.println("Applied " + applied + " change(s); follower at seq " + replicator.appliedSeq() + ".");
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
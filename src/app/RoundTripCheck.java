@@ -0,0 +1,316 @@
+package app;
+
+import io.BinaryRepository;
+import io.ColumnarExporter;
+import io.ColumnarReader;
+import io.WorkoutRepository;
+import model.Round;
+import model.Workout;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+// Round-trip check for the binary record format and the columnar export. Generated
+// workouts, awkward ones included (nulls, unicode, control characters, extreme
+// ints, missing and invalid dates, long runs for RLE, more rows than one row
+// group), are written through BinaryRepository and read back from a fresh
+// instance. They are then exported with ColumnarExporter and read back with
+// ColumnarReader. Every value, the schema and the row-group stats are compared.
+//
+//   java -cp out app.RoundTripCheck
+//   java -cp out app.RoundTripCheck --workouts 50000 --seed 7
+//
+// Options: --dir <empty dir> (default: a new temp dir), --workouts N, --seed N.
+// Exits with status 1 when anything doesn't match.
+public class RoundTripCheck {
+    private static final String[] WORKOUT_COLUMNS = {
+            "id:string:PLAIN", "date:date:DELTA", "workoutType:string:RLE", "drills:string:PLAIN",
+            "roundsCount:int:PLAIN", "notes:string:PLAIN"};
+    private static final String[] ROUND_COLUMNS = {
+            "workoutId:string:PLAIN", "date:date:DELTA", "roundIndex:int:PLAIN", "beltLevel:string:RLE",
+            "partnerSize:string:PLAIN", "partnerAge:int:PLAIN", "roundDurationMinutes:int:PLAIN",
+            "timesYouWereSubmitted:int:PLAIN", "submissionTypesAgainst:string:PLAIN",
+            "timesYouSubmittedPartner:int:PLAIN", "submissionTypesFor:string:PLAIN", "observations:string:PLAIN"};
+
+    private static final String[] TYPES = {"Gi", "No-gi"};
+    private static final String[] BELTS = {"White", "Blue", "Purple", "Brown", "Black", "Unknown"};
+    private static final String[] ODD_STRINGS = {
+            null, "", " ", "Ölçü 柔術 🥋", "quote \" and backslash \\", "line\nbreak\ttab\r",
+            "ctrl \u0001\u001f", "comma, separated, list", "x".repeat(300)};
+    private static final int[] ODD_INTS = {0, -1, 1, 63, 64, -64, -65, 127, 128, 16383, 16384,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, -123456789};
+
+    private static class Options {
+        Path dir;
+        int workouts = 20_000;
+        long seed = 42;
+    }
+
+    // mismatches, with the first few kept for the report
+    private static class Check {
+        long compared;
+        long mismatches;
+        final List<String> first = new ArrayList<>();
+
+        void expect(String where, Object want, Object got) {
+            compared++;
+            if (Objects.equals(want, got)) return;
+            mismatches++;
+            if (first.size() < 10) first.add(where + ": expected " + show(want) + ", got " + show(got));
+        }
+
+        private static String show(Object v) {
+            if (!(v instanceof String s)) return String.valueOf(v);
+            String shown = s.length() > 40 ? s.substring(0, 40) + "..." : s;
+            return "\"" + shown.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + "\"";
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(parse(args)) ? 0 : 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(Options o) throws Exception {
+        if (o.dir == null) {
+            o.dir = Files.createTempDirectory("bjj-roundtrip");
+        } else if (Files.exists(o.dir.resolve("workouts.jsonl")) || Files.exists(o.dir.resolve("workouts.bin"))) {
+            throw new IllegalArgumentException(o.dir + " already has a workout log; pass an empty directory");
+        }
+        Files.createDirectories(o.dir);
+        // an empty binary log, so the workouts go straight into the binary store
+        Files.write(BinaryRepository.binFile(o.dir), new byte[]{'B', 'J', 'J', 'B', 1});
+
+        List<Workout> written = generate(o.workouts, new Random(o.seed));
+        System.out.println("-- Round-trip check: " + written.size() + " workouts, seed " + o.seed + " --");
+        System.out.println("Data: " + o.dir.toAbsolutePath());
+
+        long t0 = System.nanoTime();
+        WorkoutRepository store = new BinaryRepository(o.dir);
+        for (Workout w : written) store.append(w);
+        Check binary = new Check();
+        compareBinary(written, new BinaryRepository(o.dir).readAllWorkouts(), binary);
+        report("Binary records (workouts.bin)", binary, t0);
+
+        t0 = System.nanoTime();
+        Path file = o.dir.resolve("workouts.bjjc");
+        ColumnarExporter.Result exported = ColumnarExporter.export(new BinaryRepository(o.dir), file);
+        Check columnar = new Check();
+        compareColumnar(written, exported, file, columnar);
+        report("Columnar export (workouts.bjjc, " + exported.rowGroups + " row groups)", columnar, t0);
+
+        boolean pass = binary.mismatches == 0 && columnar.mismatches == 0;
+        System.out.println(pass ? "\nPASS" : "\nFAIL");
+        return pass;
+    }
+
+    private static void report(String what, Check c, long t0) {
+        System.out.printf("%n%s: %d values compared, %d mismatch(es), %d ms%n",
+                what, c.compared, c.mismatches, (System.nanoTime() - t0) / 1_000_000);
+        for (String m : c.first) System.out.println("  " + m);
+    }
+
+    // ---------- binary ----------
+
+    private static void compareBinary(List<Workout> want, List<Workout> got, Check c) {
+        c.expect("record count", want.size(), got.size());
+        for (int i = 0; i < Math.min(want.size(), got.size()); i++) {
+            Workout a = want.get(i);
+            Workout b = got.get(i);
+            String at = "record " + i + " ";
+            c.expect(at + "id", a.id, b.id);
+            c.expect(at + "date", a.date, b.date);
+            c.expect(at + "workoutType", a.workoutType, b.workoutType);
+            c.expect(at + "drills", a.drills, b.drills);
+            c.expect(at + "roundsCount", nz(a.roundsCount), nz(b.roundsCount));
+            c.expect(at + "notes", a.notes, b.notes);
+            c.expect(at + "rounds", a.rounds.size(), b.rounds.size());
+            for (int k = 0; k < Math.min(a.rounds.size(), b.rounds.size()); k++) {
+                Object[] x = roundValues(a.rounds.get(k));
+                Object[] y = roundValues(b.rounds.get(k));
+                for (int f = 0; f < x.length; f++) {
+                    c.expect(at + "round " + k + " " + name(ROUND_COLUMNS[f + 3]), x[f], y[f]);
+                }
+            }
+        }
+    }
+
+    // ---------- columnar ----------
+
+    private static void compareColumnar(List<Workout> written, ColumnarExporter.Result exported, Path file, Check c)
+            throws Exception {
+        List<Object[]> workoutRows = new ArrayList<>();
+        List<Object[]> roundRows = new ArrayList<>();
+        for (Workout w : written) {
+            String date = validDate(w.date);
+            workoutRows.add(new Object[]{w.id, date, w.workoutType, w.drills, nz(w.roundsCount), w.notes});
+            for (int k = 0; k < w.rounds.size(); k++) {
+                Object[] r = roundValues(w.rounds.get(k));
+                Object[] row = new Object[3 + r.length];
+                row[0] = w.id;
+                row[1] = date;
+                row[2] = k + 1;
+                System.arraycopy(r, 0, row, 3, r.length);
+                roundRows.add(row);
+            }
+        }
+        c.expect("exported workouts", workoutRows.size(), exported.workouts);
+        c.expect("exported rounds", roundRows.size(), exported.rounds);
+
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            c.expect("row groups in footer", exported.rowGroups, reader.rowGroups.size());
+            long previous = -1;
+            for (ColumnarReader.RowGroup g : reader.rowGroups) {
+                c.expect("row group offsets increase", true, g.offset > previous);
+                previous = g.offset;
+            }
+            compareTable(reader, "workouts", WORKOUT_COLUMNS, workoutRows, c);
+            compareTable(reader, "rounds", ROUND_COLUMNS, roundRows, c);
+        }
+    }
+
+    private static void compareTable(ColumnarReader reader, String name, String[] schema, List<Object[]> want, Check c)
+            throws Exception {
+        ColumnarReader.Table t = reader.table(name);
+        c.expect("table " + name, true, t != null);
+        if (t == null) return;
+        c.expect(name + " column count", schema.length, t.columns.size());
+        String[] columns = new String[schema.length];
+        for (int i = 0; i < schema.length; i++) {
+            columns[i] = name(schema[i]);
+            ColumnarReader.Column col = i < t.columns.size() ? t.columns.get(i) : null;
+            c.expect(name + " column " + i, schema[i], col == null ? null : col.name + ":" + col.type + ":" + col.encoding);
+        }
+        int dateColumn = t.column("date");
+
+        int row = 0;
+        for (ColumnarReader.RowGroup g : reader.rowGroups) {
+            if (g.table != t) continue;
+            Object[][] values = reader.read(g, columns);
+            String min = null;
+            String max = null;
+            for (int r = 0; r < g.rows; r++, row++) {
+                Object[] expected = row < want.size() ? want.get(row) : new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    c.expect(name + " row " + row + " " + columns[i], expected[i], values[i][r]);
+                }
+                String d = (String) values[dateColumn][r];
+                if (d != null && (min == null || d.compareTo(min) < 0)) min = d;
+                if (d != null && (max == null || d.compareTo(max) > 0)) max = d;
+            }
+            c.expect(name + " group at " + g.offset + " min date", min, g.minDate);
+            c.expect(name + " group at " + g.offset + " max date", max, g.maxDate);
+        }
+        c.expect(name + " rows", want.size(), row);
+    }
+
+    // ---------- data ----------
+
+    // Awkward values are mixed in at random; workoutType comes in long runs so RLE
+    // has something to compress, with nulls in between. Drills carry the index, so
+    // no two workouts have the same content and none is rejected as a duplicate.
+    private static List<Workout> generate(int n, Random rnd) {
+        List<Workout> out = new ArrayList<>(n);
+        LocalDate day = LocalDate.of(2015, 1, 1);
+        String type = TYPES[0];
+        for (int i = 0; i < n; i++) {
+            Workout w = new Workout();
+            w.id = rnd.nextInt(50) == 0 ? odd(rnd) : "rt-" + i;
+            // mostly forwards, sometimes a big jump either way
+            day = day.plusDays(rnd.nextInt(20) == 0 ? rnd.nextInt(40_000) - 20_000 : rnd.nextInt(3));
+            if (day.getYear() < 1900 || day.getYear() > 2200) day = LocalDate.of(2015, 1, 1);
+            // shaped like dates but invalid, sorting before and after every real one
+            int d = rnd.nextInt(40);
+            w.date = d == 0 ? null : d == 1 ? "2024-02-30" : d == 2 ? "not a date" : d == 3 ? ""
+                    : d == 4 ? "0000-00-00" : d == 5 ? "9999-99-99" : day.toString();
+            if (rnd.nextInt(200) == 0) type = TYPES[rnd.nextInt(TYPES.length)];
+            w.workoutType = rnd.nextInt(100) == 0 ? null : type;
+            w.drills = "drill #" + i + (rnd.nextInt(10) == 0 ? " " + odd(rnd) : "");
+            w.notes = rnd.nextInt(5) == 0 ? odd(rnd) : "";
+            int rounds = rnd.nextInt(30) == 0 ? 40 : rnd.nextInt(5);
+            for (int k = 0; k < rounds; k++) w.rounds.add(round(rnd));
+            w.roundsCount = rnd.nextInt(30) == 0 ? null : rnd.nextInt(30) == 0 ? oddInt(rnd) : rounds;
+            out.add(w);
+        }
+        return out;
+    }
+
+    private static Round round(Random rnd) {
+        Round r = new Round();
+        r.beltLevel = rnd.nextInt(40) == 0 ? null : BELTS[rnd.nextInt(3) == 0 ? rnd.nextInt(BELTS.length) : 1];
+        r.partnerSize = rnd.nextInt(10) == 0 ? odd(rnd) : String.valueOf(150 + rnd.nextInt(100));
+        r.partnerAge = rnd.nextInt(20) == 0 ? null : rnd.nextInt(20) == 0 ? oddInt(rnd) : 17 + rnd.nextInt(40);
+        r.roundDurationMinutes = rnd.nextInt(20) == 0 ? null : rnd.nextInt(11);
+        r.timesYouWereSubmitted = rnd.nextInt(20) == 0 ? oddInt(rnd) : rnd.nextInt(3);
+        r.submissionTypesAgainst = rnd.nextInt(4) == 0 ? odd(rnd) : "armbar, rnc";
+        r.timesYouSubmittedPartner = rnd.nextInt(20) == 0 ? null : rnd.nextInt(3);
+        r.submissionTypesFor = rnd.nextInt(4) == 0 ? odd(rnd) : "triangle";
+        r.observations = rnd.nextInt(3) == 0 ? odd(rnd) : "";
+        return r;
+    }
+
+    private static String odd(Random rnd) {
+        return ODD_STRINGS[rnd.nextInt(ODD_STRINGS.length)];
+    }
+
+    private static int oddInt(Random rnd) {
+        return ODD_INTS[rnd.nextInt(ODD_INTS.length)];
+    }
+
+    // round fields in ROUND_COLUMNS order (after workoutId, date and roundIndex), ints as stored
+    private static Object[] roundValues(Round r) {
+        return new Object[]{r.beltLevel, r.partnerSize, nz(r.partnerAge), nz(r.roundDurationMinutes),
+                nz(r.timesYouWereSubmitted), r.submissionTypesAgainst, nz(r.timesYouSubmittedPartner),
+                r.submissionTypesFor, r.observations};
+    }
+
+    // the columnar date column only stores real yyyy-MM-dd dates
+    private static String validDate(String s) {
+        try {
+            return LocalDate.parse(s).toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String name(String column) {
+        return column.substring(0, column.indexOf(':'));
+    }
+
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+
+    // ---------- options ----------
+
+    private static Options parse(String[] args) {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + a);
+            String v = args[++i];
+            switch (a) {
+                case "--dir" -> o.dir = Path.of(v);
+                case "--workouts" -> {
+                    o.workouts = Integer.parseInt(v);
+                    if (o.workouts <= 0) throw new IllegalArgumentException("--workouts must be at least 1");
+                }
+                case "--seed" -> o.seed = Long.parseLong(v);
+                default -> throw new IllegalArgumentException("Unknown option " + a);
+            }
+        }
+        return o;
+    }
+}
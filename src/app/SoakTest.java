@@ -0,0 +1,663 @@
+package app;
+
+import io.ChangeFeed;
+import io.ObservableRepository;
+import io.WorkoutHit;
+import io.WorkoutQuery;
+import io.WorkoutRepository;
+import model.Round;
+import model.Workout;
+import stats.MatchupTable;
+import stats.RollupEngine;
+import stats.TrainingTotals;
+
+import java.io.BufferedWriter;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+// Soak test: hammers a scratch repository with a mix of appends, edits, deletes,
+// by-id lookups and stats from many threads (and optionally several processes)
+// for a fixed time, then reports throughput, latency percentiles and any records
+// that were lost, duplicated or came back after being deleted.
+//
+//   java -cp out app.SoakTest --threads 8 --seconds 30
+//   java -cp out app.SoakTest --processes 3 --threads 4 --mix append=30,replace=30,delete=10,lookup=20,stats=10
+//
+// Options: --dir <empty dir> (default: a new temp dir), --threads N, --processes N,
+// --seconds N, --mix op=weight,..., --seed-records N, --format jsonl|binary,
+// --locked (hold a lock file in the directory across lookup + edit, and around
+// appends, so writes from every thread and process are serialized, as a fix would),
+// --no-listeners (skip rollups, matchups and the change feed), --seed N.
+//
+// Edits look a record up by id and then rewrite it by line number, the way the
+// menu does. Each worker only edits its own records and keeps a ledger of what
+// it expects to be in the log; after the run the log is read back and checked
+// against every ledger. Exits with status 1 when anything doesn't match.
+public class SoakTest {
+    private static final String[] OPS = {"append", "replace", "delete", "lookup", "stats"};
+    private static final int APPEND = 0, REPLACE = 1, DELETE = 2, LOOKUP = 3, STATS = 4;
+
+    // ledger states
+    private static final int LIVE = 0, DELETED = 1, UNCERTAIN = 2;
+
+    private static class Options {
+        Path dir;
+        int threads = 8;
+        int processes = 1;
+        int seconds = 30;
+        int[] mix = {40, 15, 5, 30, 10};
+        int seedRecords = 500;
+        boolean binary = false;
+        boolean locked = false;
+        boolean listeners = true;
+        long seed = 42;
+        int child = -1; // index when running as a child process
+    }
+
+    public static void main(String[] args) {
+        try {
+            Options o = parse(args);
+            if (o.child >= 0) {
+                runChild(o);
+            } else {
+                System.exit(runParent(o) ? 0 : 1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // ---------- parent: seed, run, verify, report ----------
+
+    private static boolean runParent(Options o) throws Exception {
+        if (o.dir == null) {
+            o.dir = Files.createTempDirectory("bjj-soak");
+        } else if (Files.exists(o.dir.resolve("workouts.jsonl")) || Files.exists(o.dir.resolve("workouts.bin"))) {
+            throw new IllegalArgumentException(o.dir + " already has a workout log; pass an empty directory");
+        }
+        Files.createDirectories(o.dir);
+        if (o.binary) {
+            // an empty binary log, so WorkoutRepository.open picks the binary store
+            Files.write(o.dir.resolve("workouts.bin"), new byte[]{'B', 'J', 'J', 'B', 1});
+        }
+
+        Map<String, Expect> ledger = new HashMap<>();
+        WorkoutRepository seedRepo = WorkoutRepository.open(o.dir);
+        Random rnd = new Random(o.seed);
+        for (int i = 0; i < o.seedRecords; i++) {
+            String id = "seed-" + i;
+            seedRepo.append(generate(rnd, id, 0));
+            ledger.put(id, new Expect(LIVE, 0));
+        }
+
+        if (o.listeners) {
+            // creates the feed and its snapshot 0 once, before any worker opens it
+            new ChangeFeed(seedRepo, o.dir, 200);
+        }
+
+        System.out.printf("-- Soak test: %d process(es) x %d thread(s), %ds, %s%s --%n",
+                o.processes, o.threads, o.seconds, mixLabel(o.mix), o.locked ? ", locked edits" : "");
+        System.out.println("Data: " + o.dir.toAbsolutePath());
+
+        Run total = new Run();
+        int failedWorkers = 0;
+        long start = System.nanoTime();
+        if (o.processes <= 1) {
+            total.add(runWorkers(o, "t"));
+        } else {
+            List<Process> children = new ArrayList<>();
+            for (int p = 0; p < o.processes; p++) {
+                List<String> cmd = new ArrayList<>(List.of(
+                        Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"), SoakTest.class.getName(),
+                        "--child", String.valueOf(p), "--dir", o.dir.toString(),
+                        "--threads", String.valueOf(o.threads), "--seconds", String.valueOf(o.seconds),
+                        "--mix", mixLabel(o.mix), "--seed", String.valueOf(o.seed),
+                        "--seed-records", String.valueOf(o.seedRecords)));
+                if (o.locked) cmd.add("--locked");
+                if (!o.listeners) cmd.add("--no-listeners");
+                children.add(new ProcessBuilder(cmd).inheritIO()
+                        .redirectError(childErrors(o.dir, p).toFile()).start());
+            }
+            // a worker that died took its ledger with it, so the run can't pass
+            for (int p = 0; p < children.size(); p++) {
+                int status = children.get(p).waitFor();
+                Path report = childReport(o.dir, p);
+                if (status == 0 && Files.exists(report)) {
+                    total.add(Run.read(report));
+                    continue;
+                }
+                failedWorkers++;
+                System.err.println("Worker process " + p + (status != 0 ? " exited with status " + status : " left no report")
+                        + "; its stderr:");
+                System.err.print(Files.readString(childErrors(o.dir, p), StandardCharsets.UTF_8));
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        printThroughput(total, elapsed);
+        ledger.putAll(total.ledger);
+        return verify(o.dir, ledger, total.lookupMisses, failedWorkers);
+    }
+
+    private static void runChild(Options o) throws Exception {
+        Run run = runWorkers(o, "p" + o.child + "t");
+        run.write(childReport(o.dir, o.child));
+    }
+
+    private static Path childReport(Path dir, int child) {
+        return dir.resolve("soak-report-" + child + ".txt");
+    }
+
+    private static Path childErrors(Path dir, int child) {
+        return dir.resolve("soak-stderr-" + child + ".txt");
+    }
+
+    // ---------- workers ----------
+
+    private static Run runWorkers(Options o, String prefix) throws Exception {
+        ObservableRepository repo = new ObservableRepository(WorkoutRepository.open(o.dir));
+        WriteLock writeLock = o.locked ? new WriteLock(o.dir) : null;
+        MatchupTable matchups = null;
+        if (o.listeners) {
+            repo.addListener(new RollupEngine(repo));
+            matchups = new MatchupTable(repo);
+            repo.addListener(matchups);
+            repo.addListener(new ChangeFeed(repo, o.dir, 200));
+        }
+
+        long deadline = System.nanoTime() + o.seconds * 1_000_000_000L;
+        Run total = new Run();
+        Worker[] workers = new Worker[o.threads];
+        Thread[] threads = new Thread[o.threads];
+        for (int i = 0; i < o.threads; i++) {
+            workers[i] = new Worker(o, repo, writeLock, matchups, prefix + i, deadline,
+                    new Random(o.seed * 31 + (o.child + 1) * 1000L + i));
+            threads[i] = new Thread(workers[i], "soak-" + prefix + i);
+            threads[i].start();
+        }
+        for (int i = 0; i < o.threads; i++) {
+            threads[i].join();
+            total.add(workers[i].run);
+        }
+        return total;
+    }
+
+    // --locked: serializes writes across threads (the monitor) and processes (a file
+    // lock on soak.lock in the data directory; a JVM can't hold it twice). Appends
+    // take it too, since another process's whole-file rewrite would drop them.
+    private static class WriteLock {
+        private final Path file;
+
+        WriteLock(Path dir) {
+            this.file = dir.resolve("soak.lock");
+        }
+
+        synchronized void run(Callable<Void> body) throws Exception {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = ch.lock();
+                try {
+                    body.call();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private static class Worker implements Runnable {
+        private final Options o;
+        private final ObservableRepository repo;
+        private final WriteLock writeLock; // null unless --locked
+        private final MatchupTable matchups;
+        private final String name;
+        private final long deadline;
+        private final Random rnd;
+        private final Run run = new Run();
+        private final List<String> live = new ArrayList<>(); // own records we think are in the log
+        private int next = 0;
+
+        Worker(Options o, ObservableRepository repo, WriteLock writeLock, MatchupTable matchups,
+               String name, long deadline, Random rnd) {
+            this.o = o;
+            this.repo = repo;
+            this.writeLock = writeLock;
+            this.matchups = matchups;
+            this.name = name;
+            this.deadline = deadline;
+            this.rnd = rnd;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                int op = pick();
+                if ((op == REPLACE || op == DELETE) && live.isEmpty()) op = APPEND;
+                long t0 = System.nanoTime();
+                try {
+                    switch (op) {
+                        case APPEND -> append();
+                        case REPLACE, DELETE -> edit(op);
+                        case LOOKUP -> lookup();
+                        default -> stats();
+                    }
+                    run.hist[op].record((System.nanoTime() - t0) / 1000);
+                } catch (Exception e) {
+                    run.errors[op]++;
+                    if (run.firstError[op] == null) run.firstError[op] = e.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+            }
+        }
+
+        private int pick() {
+            int total = 0;
+            for (int w : o.mix) total += w;
+            int r = rnd.nextInt(total);
+            for (int i = 0; i < o.mix.length; i++) {
+                r -= o.mix[i];
+                if (r < 0) return i;
+            }
+            return APPEND;
+        }
+
+        private void append() throws Exception {
+            String id = name + "-" + next++;
+            run.ledger.put(id, new Expect(UNCERTAIN, 0));
+            Workout w = generate(rnd, id, 0);
+            if (writeLock != null) {
+                writeLock.run(() -> {
+                    repo.append(w);
+                    return null;
+                });
+            } else {
+                repo.append(w);
+            }
+            run.ledger.put(id, new Expect(LIVE, 0));
+            live.add(id);
+        }
+
+        // look the record up by id, then rewrite or delete it by line number
+        private void edit(int op) throws Exception {
+            int slot = rnd.nextInt(live.size());
+            String id = live.get(slot);
+            Expect e = run.ledger.get(id);
+            if (writeLock != null) {
+                writeLock.run(() -> {
+                    editUnlocked(op, id, e, slot);
+                    return null;
+                });
+            } else {
+                editUnlocked(op, id, e, slot);
+            }
+        }
+
+        private void editUnlocked(int op, String id, Expect e, int slot) throws Exception {
+            List<WorkoutHit> hits = repo.query(WorkoutQuery.all().id(id).fields("id").limit(1));
+            if (hits.isEmpty()) {
+                run.lookupMisses++;
+                e.state = UNCERTAIN;
+                live.remove(slot);
+                return;
+            }
+            int line = hits.get(0).line;
+            int prevState = e.state;
+            e.state = UNCERTAIN;
+            if (op == REPLACE) {
+                repo.replaceLine(line, generate(rnd, id, e.version + 1));
+                e.version++;
+                e.state = prevState;
+            } else {
+                repo.deleteLine(line);
+                e.state = DELETED;
+                live.remove(slot);
+            }
+        }
+
+        private void lookup() throws Exception {
+            String id = live.isEmpty() || (o.seedRecords > 0 && rnd.nextBoolean())
+                    ? "seed-" + rnd.nextInt(Math.max(1, o.seedRecords))
+                    : live.get(rnd.nextInt(live.size()));
+            if (repo.query(WorkoutQuery.all().id(id).limit(1)).isEmpty()) run.lookupMisses++;
+        }
+
+        private void stats() throws Exception {
+            TrainingTotals t = new TrainingTotals();
+            for (Workout w : repo.readAllWorkouts()) t.add(w, 1);
+            if (matchups != null) matchups.query(-1, -1, -1, -1);
+        }
+    }
+
+    // ---------- verification ----------
+
+    private static boolean verify(Path dir, Map<String, Expect> ledger, long lookupMisses, int failedWorkers) throws Exception {
+        Map<String, List<Integer>> found = new HashMap<>();
+        int records = 0;
+        for (Workout w : WorkoutRepository.open(dir).readAllWorkouts()) {
+            records++;
+            found.computeIfAbsent(w.id == null ? "" : w.id, k -> new ArrayList<>()).add(version(w));
+        }
+
+        int expectedLive = 0, lost = 0, duplicated = 0, stale = 0, resurrected = 0, unexpected = 0, uncertain = 0;
+        for (Map.Entry<String, Expect> en : ledger.entrySet()) {
+            Expect e = en.getValue();
+            List<Integer> copies = found.getOrDefault(en.getKey(), List.of());
+            if (e.state == UNCERTAIN) {
+                uncertain++;
+            } else if (e.state == DELETED) {
+                if (!copies.isEmpty()) resurrected++;
+            } else {
+                expectedLive++;
+                if (copies.isEmpty()) lost++;
+                else if (copies.size() > 1) duplicated++;
+                else if (copies.get(0) != e.version) stale++;
+            }
+        }
+        for (Map.Entry<String, List<Integer>> en : found.entrySet()) {
+            if (!ledger.containsKey(en.getKey())) unexpected += en.getValue().size();
+        }
+
+        int violations = lost + duplicated + stale + resurrected + unexpected + failedWorkers;
+        System.out.println("\n-- Integrity --");
+        System.out.println("Records in log:        " + records + " (expected " + expectedLive + " live)");
+        System.out.println("Lost:                  " + lost);
+        System.out.println("Duplicated:            " + duplicated);
+        System.out.println("Stale (lost update):   " + stale);
+        System.out.println("Resurrected:           " + resurrected);
+        System.out.println("Unexpected records:    " + unexpected);
+        System.out.println("Lookup misses:         " + lookupMisses);
+        System.out.println("Unverifiable (op failed mid-way): " + uncertain);
+        System.out.println("Failed worker processes: " + failedWorkers);
+        System.out.println(violations + lookupMisses == 0 ? "PASS" : "FAIL: " + (violations + lookupMisses) + " violation(s)");
+        return violations + lookupMisses == 0;
+    }
+
+    // the edit counter is carried in the drills field: "<id> v<n>"
+    private static int version(Workout w) {
+        String d = w.drills == null ? "" : w.drills;
+        int v = d.lastIndexOf(" v");
+        if (v < 0) return -1;
+        try {
+            return Integer.parseInt(d.substring(v + 2));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ---------- data ----------
+
+    private static final String[] BELTS = {"White", "White", "Blue", "Blue", "Blue", "Purple", "Purple", "Brown", "Black"};
+    private static final String[] SIZES = {"light", "medium", "heavy", "145", "170", "185", "210"};
+    private static final String[] SUBS = {"armbar", "triangle", "rear naked choke", "kimura", "guillotine",
+            "americana", "bow and arrow", "heel hook", "ezekiel", "darce"};
+    private static final int[] DURATIONS = {5, 5, 6, 6, 7, 10};
+
+    // Unique content per (id, version), so the duplicate check never rejects a generated workout.
+    private static Workout generate(Random rnd, String id, int version) {
+        Workout w = new Workout();
+        w.id = id;
+        w.date = LocalDate.now().minusDays(rnd.nextInt(3 * 365)).toString();
+        w.workoutType = rnd.nextInt(3) == 0 ? "No-gi" : "Gi";
+        w.drills = id + " v" + version;
+        int n = 3 + rnd.nextInt(6);
+        for (int i = 0; i < n; i++) {
+            Round r = new Round();
+            r.beltLevel = BELTS[rnd.nextInt(BELTS.length)];
+            r.partnerSize = SIZES[rnd.nextInt(SIZES.length)];
+            r.partnerAge = 17 + rnd.nextInt(38);
+            r.roundDurationMinutes = DURATIONS[rnd.nextInt(DURATIONS.length)];
+            r.timesYouWereSubmitted = rnd.nextInt(3);
+            r.submissionTypesAgainst = subs(rnd, r.timesYouWereSubmitted);
+            r.timesYouSubmittedPartner = rnd.nextInt(3);
+            r.submissionTypesFor = subs(rnd, r.timesYouSubmittedPartner);
+            r.observations = rnd.nextInt(4) == 0 ? "worked guard retention" : "";
+            w.rounds.add(r);
+        }
+        w.roundsCount = n;
+        w.notes = rnd.nextInt(5) == 0 ? "felt sharp" : "";
+        return w;
+    }
+
+    private static String subs(Random rnd, int n) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) out.add(SUBS[rnd.nextInt(SUBS.length)]);
+        return String.join(", ", out);
+    }
+
+    // ---------- results ----------
+
+    private static class Expect {
+        int state;
+        int version;
+
+        Expect(int state, int version) {
+            this.state = state;
+            this.version = version;
+        }
+    }
+
+    // What one worker (or one process) did: latencies, errors and its ledger.
+    private static class Run {
+        final Histogram[] hist = newHistograms();
+        final long[] errors = new long[OPS.length];
+        final String[] firstError = new String[OPS.length];
+        long lookupMisses;
+        final Map<String, Expect> ledger = new LinkedHashMap<>();
+
+        void add(Run o) {
+            for (int i = 0; i < OPS.length; i++) {
+                hist[i].merge(o.hist[i]);
+                errors[i] += o.errors[i];
+                if (firstError[i] == null) firstError[i] = o.firstError[i];
+            }
+            lookupMisses += o.lookupMisses;
+            ledger.putAll(o.ledger);
+        }
+
+        void write(Path file) throws Exception {
+            try (BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < OPS.length; i++) {
+                    bw.write("op " + i + " " + errors[i] + " " + hist[i].toLine() + "\n");
+                    if (firstError[i] != null) bw.write("error " + i + " " + firstError[i].replace('\n', ' ') + "\n");
+                }
+                bw.write("misses " + lookupMisses + "\n");
+                for (Map.Entry<String, Expect> e : ledger.entrySet()) {
+                    bw.write("id " + e.getKey() + " " + e.getValue().state + " " + e.getValue().version + "\n");
+                }
+            }
+        }
+
+        static Run read(Path file) throws Exception {
+            Run r = new Run();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] f = line.split(" ");
+                switch (f[0]) {
+                    case "op" -> {
+                        int op = Integer.parseInt(f[1]);
+                        r.errors[op] = Long.parseLong(f[2]);
+                        r.hist[op] = Histogram.fromLine(f.length > 3 ? f[3] : "");
+                    }
+                    case "error" -> r.firstError[Integer.parseInt(f[1])] = line.split(" ", 3)[2];
+                    case "misses" -> r.lookupMisses = Long.parseLong(f[1]);
+                    case "id" -> r.ledger.put(f[1], new Expect(Integer.parseInt(f[2]), Integer.parseInt(f[3])));
+                    default -> { }
+                }
+            }
+            return r;
+        }
+    }
+
+    private static void printThroughput(Run run, double seconds) {
+        System.out.printf("%n%-8s %9s %7s %9s %9s %9s %9s %9s%n",
+                "op", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        long all = 0;
+        for (int i = 0; i < OPS.length; i++) {
+            Histogram h = run.hist[i];
+            all += h.count;
+            System.out.printf("%-8s %9d %7d %9.0f %9.2f %9.2f %9.2f %9.2f%n",
+                    OPS[i], h.count, run.errors[i], h.count / seconds,
+                    h.percentile(50) / 1000.0, h.percentile(90) / 1000.0, h.percentile(99) / 1000.0, h.max / 1000.0);
+        }
+        System.out.printf("Total: %d ops in %.1fs (%.0f ops/s)%n", all, seconds, all / seconds);
+        for (int i = 0; i < OPS.length; i++) {
+            if (run.firstError[i] != null) System.out.println("First " + OPS[i] + " error: " + run.firstError[i]);
+        }
+    }
+
+    // Latencies in microseconds: 16 linear buckets per power of two (about 6% resolution).
+    private static class Histogram {
+        final long[] counts = new long[64 * 16];
+        long count;
+        long max;
+
+        void record(long micros) {
+            long v = Math.max(0, micros);
+            counts[bucket(v)]++;
+            count++;
+            max = Math.max(max, v);
+        }
+
+        long percentile(double p) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * p / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, lowerBound(i));
+            }
+            return max;
+        }
+
+        void merge(Histogram o) {
+            for (int i = 0; i < counts.length; i++) counts[i] += o.counts[i];
+            count += o.count;
+            max = Math.max(max, o.max);
+        }
+
+        private static int bucket(long v) {
+            if (v < 16) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            return (exp - 3) * 16 + (int) ((v >>> (exp - 4)) & 15);
+        }
+
+        private static long lowerBound(int i) {
+            if (i < 16) return i;
+            int exp = i / 16 + 3;
+            return (16L + i % 16) << (exp - 4);
+        }
+
+        // "max;bucket:count,bucket:count..." with only the non-empty buckets
+        String toLine() {
+            StringBuilder sb = new StringBuilder().append(max).append(';');
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                sb.append(i).append(':').append(counts[i]).append(',');
+            }
+            return sb.toString();
+        }
+
+        static Histogram fromLine(String line) {
+            Histogram h = new Histogram();
+            if (line.isEmpty()) return h;
+            String[] parts = line.split(";", -1);
+            h.max = Long.parseLong(parts[0]);
+            if (parts.length > 1) {
+                for (String b : parts[1].split(",")) {
+                    if (b.isEmpty()) continue;
+                    int colon = b.indexOf(':');
+                    long n = Long.parseLong(b.substring(colon + 1));
+                    h.counts[Integer.parseInt(b.substring(0, colon))] = n;
+                    h.count += n;
+                }
+            }
+            return h;
+        }
+    }
+
+    private static Histogram[] newHistograms() {
+        Histogram[] h = new Histogram[OPS.length];
+        for (int i = 0; i < h.length; i++) h[i] = new Histogram();
+        return h;
+    }
+
+    // ---------- options ----------
+
+    private static Options parse(String[] args) {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            switch (a) {
+                case "--locked" -> o.locked = true;
+                case "--no-listeners" -> o.listeners = false;
+                default -> {
+                    if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + a);
+                    String v = args[++i];
+                    switch (a) {
+                        case "--dir" -> o.dir = Path.of(v);
+                        case "--threads" -> o.threads = positive(a, v);
+                        case "--processes" -> o.processes = positive(a, v);
+                        case "--seconds" -> o.seconds = positive(a, v);
+                        case "--seed-records" -> o.seedRecords = Integer.parseInt(v);
+                        case "--seed" -> o.seed = Long.parseLong(v);
+                        case "--child" -> o.child = Integer.parseInt(v);
+                        case "--mix" -> o.mix = parseMix(v);
+                        case "--format" -> {
+                            if (!v.equals("jsonl") && !v.equals("binary")) {
+                                throw new IllegalArgumentException("--format must be jsonl or binary");
+                            }
+                            o.binary = v.equals("binary");
+                        }
+                        default -> throw new IllegalArgumentException("Unknown option " + a);
+                    }
+                }
+            }
+        }
+        return o;
+    }
+
+    private static int positive(String name, String v) {
+        int n = Integer.parseInt(v);
+        if (n <= 0) throw new IllegalArgumentException(name + " must be at least 1");
+        return n;
+    }
+
+    // "append=40,replace=15,..."; ops left out get weight 0
+    private static int[] parseMix(String v) {
+        int[] mix = new int[OPS.length];
+        for (String part : v.split(",")) {
+            String[] kv = part.split("=");
+            int op = List.of(OPS).indexOf(kv[0].trim());
+            if (op < 0 || kv.length != 2) throw new IllegalArgumentException("Bad --mix entry: " + part);
+            mix[op] = Integer.parseInt(kv[1].trim());
+        }
+        int total = 0;
+        for (int w : mix) total += w;
+        if (total <= 0) throw new IllegalArgumentException("--mix needs at least one op with weight > 0");
+        return mix;
+    }
+
+    private static String mixLabel(int[] mix) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OPS.length; i++) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(OPS[i]).append('=').append(mix[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package io;
+
+import model.Workout;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Non-blocking counterpart of WorkoutRepository. Failures complete the future
+// exceptionally instead of being thrown.
+public interface AsyncWorkoutRepository extends AutoCloseable {
+    CompletableFuture<Void> append(Workout w);
+
+    CompletableFuture<List<String>> readAllJsonLines();
+
+    CompletableFuture<Void> replaceLine(int index, Workout replacement);
+
+    CompletableFuture<Void> deleteLine(int index);
+
+    CompletableFuture<Integer> count();
+
+    CompletableFuture<List<WorkoutHit>> query(WorkoutQuery q);
+
+    // waits for queued writes to finish
+    @Override
+    void close();
+}
@@ -0,0 +1,738 @@
+package io;
+
+import model.Workout;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Workout log stored as <dataDir>/workouts.bin in the RecordCodec format.
+//
+// The whole file is decoded into memory on first use (no JSON parsing, so this is
+// quick). When there is no workouts.bin yet the legacy workouts.jsonl is read
+// instead, and the first write converts it; migrate() does the same up front.
+public class BinaryRepository implements WorkoutRepository {
+    private final Path dataDir;
+    private final Path binFile;
+    private final Path legacyFile;
+    private final Path crcFile;
+    private final Path quarantineFile;
+    private List<Workout> model; // decoded records, null until first use
+    private LongHashSet hashes;
+    private int[] crcs = new int[0]; // CRC32C of each record in model as it was read or written
+    private int crcCount = 0;        // 0 while the model comes from the legacy JSONL log
+    private long loadedSize = -1; // file size the model matches
+    private long tornAt = -1; // start of an incomplete record at the end of the file, if any
+    private int fileVersion = RecordCodec.VERSION;
+    private boolean legacy = false;
+    private volatile Boolean sorted; // whether model is in date order; null = not checked yet
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public BinaryRepository(Path dataDir) throws Exception {
+        this.dataDir = dataDir;
+        this.binFile = binFile(dataDir);
+        this.legacyFile = dataDir.resolve("workouts.jsonl");
+        this.crcFile = dataDir.resolve("workouts.bin.crc");
+        this.quarantineFile = dataDir.resolve("workouts.quarantine.jsonl");
+        Files.createDirectories(dataDir);
+    }
+
+    public static Path binFile(Path dataDir) {
+        return dataDir.resolve("workouts.bin");
+    }
+
+    // workouts.bin even before the first write has converted a legacy JSONL log
+    @Override
+    public Path dataFile() {
+        return binFile;
+    }
+
+    // ---------- reads ----------
+
+    @Override
+    public List<String> readAllJsonLines() throws Exception {
+        lockForRead();
+        try {
+            List<String> out = new ArrayList<>(model.size());
+            for (Workout w : model) out.add(w.toJson());
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Workout> readAllWorkouts() throws Exception {
+        lockForRead();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(model));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int count() throws Exception {
+        lockForRead();
+        try {
+            return model.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<WorkoutHit> query(WorkoutQuery q) throws Exception {
+        lockForRead();
+        try {
+            int lo = 0;
+            int hi = model.size() - 1;
+            if (q.id == null && q.fromDate != null && !q.fromDate.isBlank() && isSorted()) {
+                // date-sorted: the matching dates are one contiguous stretch
+                lo = firstAfter(q.fromDate, false);
+                if (q.toDate != null) hi = firstAfter(q.toDate, true) - 1;
+            }
+            List<WorkoutHit> hits = new ArrayList<>();
+            if (q.latest) {
+                for (int i = hi; i >= lo && hits.size() < q.limit; i--) {
+                    Workout w = q.evaluate(model.get(i));
+                    if (w != null) hits.add(new WorkoutHit(i, w));
+                }
+                Collections.reverse(hits);
+            } else {
+                for (int i = lo; i <= hi && hits.size() < q.limit; i++) {
+                    Workout w = q.evaluate(model.get(i));
+                    if (w != null) hits.add(new WorkoutHit(i, w));
+                }
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isSorted() {
+        Boolean s = sorted;
+        if (s == null) {
+            s = true;
+            for (int i = 1; i < model.size() && s; i++) {
+                s = ExternalSort.DATE_ORDER.compare(model.get(i - 1).date, model.get(i).date) <= 0;
+            }
+            sorted = s;
+        }
+        return s;
+    }
+
+    // binary search on a sorted model: first index whose date is >= key (> key when inclusive)
+    private int firstAfter(String key, boolean inclusive) {
+        int lo = 0;
+        int hi = model.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = ExternalSort.DATE_ORDER.compare(model.get(mid).date, key);
+            if (c < 0 || (inclusive && c == 0)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // ---------- writes ----------
+
+    // Rejects a workout whose content is already logged (DuplicateWorkoutException).
+    @Override
+    public void append(Workout w) throws Exception {
+        appendChecked(w, true);
+    }
+
+    @Override
+    public boolean appendIfAbsent(Workout w) throws Exception {
+        return appendChecked(w, false);
+    }
+
+    private boolean appendChecked(Workout w, boolean rejectDuplicate) throws Exception {
+        byte[] record = RecordCodec.encode(w);
+        long hash = ContentHash.of(w);
+        lock.writeLock().lock();
+        try {
+            loadForWrite();
+            if (hashes.contains(hash)) {
+                if (rejectDuplicate) throw new DuplicateWorkoutException(w.date);
+                return false;
+            }
+            try (OutputStream out = Files.newOutputStream(binFile, StandardOpenOption.APPEND)) {
+                out.write(record);
+            }
+            int crc = ChecksumFile.of(record, 0, record.length);
+            model.add(w);
+            sorted = null;
+            hashes.add(hash);
+            if (crcCount == crcs.length) crcs = Arrays.copyOf(crcs, Math.max(16, crcCount * 2));
+            crcs[crcCount++] = crc;
+            long oldSize = loadedSize;
+            loadedSize += record.length;
+            try {
+                ChecksumFile.appendOne(crcFile, oldSize, loadedSize, crc);
+            } catch (Exception e) {
+                // verify() picks the record up as unchecked and adds it then
+                System.err.println("Warning: couldn't update checksums: " + e.getMessage());
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String replaceLine(int index, Workout replacement) throws Exception {
+        lock.writeLock().lock();
+        try {
+            loadForWrite();
+            if (index < 0 || index >= model.size()) {
+                throw new IllegalArgumentException("Index out of range: " + index);
+            }
+            long oldHash = ContentHash.of(model.get(index));
+            long newHash = ContentHash.of(replacement);
+            if (newHash != oldHash && hashes.contains(newHash)) {
+                throw new DuplicateWorkoutException(replacement.date);
+            }
+            checkIntact(index);
+            String oldLine = model.get(index).toJson();
+            List<Workout> updated = new ArrayList<>(model);
+            updated.set(index, replacement);
+            writeAll(updated);
+            return oldLine;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String deleteLine(int index) throws Exception {
+        lock.writeLock().lock();
+        try {
+            loadForWrite();
+            if (index < 0 || index >= model.size()) {
+                throw new IllegalArgumentException("Index out of range: " + index);
+            }
+            checkIntact(index);
+            String oldLine = model.get(index).toJson();
+            List<Workout> updated = new ArrayList<>(model);
+            updated.remove(index);
+            writeAll(updated);
+            return oldLine;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Same rules as JsonlRepository.dedupe(): first copy wins, a missing id is carried over.
+    @Override
+    public int dedupe() throws Exception {
+        lock.writeLock().lock();
+        try {
+            loadForWrite();
+            // the model's own objects stay untouched until writeAll succeeds: a carried
+            // id goes on a copy
+            Map<Long, Workout> kept = new LinkedHashMap<>();
+            for (Workout w : model) {
+                long hash = ContentHash.of(w);
+                Workout first = kept.putIfAbsent(hash, w);
+                if (first != null && (first.id == null || first.id.isEmpty()) && w.id != null && !w.id.isEmpty()) {
+                    kept.put(hash, withId(first, w.id));
+                }
+            }
+            int removed = model.size() - kept.size();
+            if (removed > 0) {
+                checkIntact(-1);
+                writeAll(new ArrayList<>(kept.values()));
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // a shallow copy: the rounds list is shared, since nothing here changes it
+    private static Workout withId(Workout w, String id) {
+        Workout c = new Workout();
+        c.id = id;
+        c.date = w.date;
+        c.workoutType = w.workoutType;
+        c.drills = w.drills;
+        c.roundsCount = w.roundsCount;
+        c.rounds = w.rounds;
+        c.notes = w.notes;
+        return c;
+    }
+
+    // Stable in-memory sort: this store already holds every record in memory.
+    @Override
+    public int sortByDate() throws Exception {
+        lock.writeLock().lock();
+        try {
+            loadForWrite();
+            if (isSorted()) return 0;
+            checkIntact(-1);
+            List<Workout> updated = new ArrayList<>(model);
+            updated.sort((a, b) -> ExternalSort.DATE_ORDER.compare(a.date, b.date));
+            writeAll(updated);
+            return updated.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Replace the whole log from JSONL lines (restores, maintenance passes). Every
+    // record is replaced, so the new checksums are a fresh baseline.
+    public void rewrite(List<String> lines) throws Exception {
+        List<Workout> workouts = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (!line.isBlank()) workouts.add(JsonlRepository.parseWorkout(line));
+        }
+        lock.writeLock().lock();
+        try {
+            writeAll(workouts);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------- integrity ----------
+
+    // Walks every record, checking that it decodes and that its bytes still match the
+    // CRC32C in workouts.bin.crc. A clean log becomes the new checksum baseline, as
+    // with JSONL. Nothing is changed when problems are found; repair() deals with those.
+    @Override
+    public LogVerifier.Report verify() throws Exception {
+        lock.writeLock().lock();
+        try {
+            ChecksumFile.Loaded stored = ChecksumFile.load(crcFile);
+            LogVerifier.Report r = scan(stored);
+            if (r.ok() && Files.exists(binFile)
+                    && (stored == null || stored.watermark != r.bytes || stored.crcs.length != r.records)) {
+                ChecksumFile.save(crcFile, r.bytes, r.crcs, r.records);
+            }
+            return r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // verify(), then moves every bad record to workouts.quarantine.jsonl and rewrites
+    // workouts.bin from the remaining records' bytes as they are. A record that still
+    // decodes is quarantined as its JSON, anything else as base64 of its bytes.
+    @Override
+    public LogVerifier.Report repair() throws Exception {
+        lock.writeLock().lock();
+        try {
+            ChecksumFile.Loaded stored = ChecksumFile.load(crcFile);
+            LogVerifier.Report r = scan(stored);
+            if (!Files.exists(binFile)) return r;
+            if (!r.bad.isEmpty()) {
+                quarantine(r);
+                model = null;
+                hashes = null;
+                load();
+            }
+            // what's left is known good, so it becomes the checksum baseline
+            int[] kept = new int[r.records - r.bad.size()];
+            int k = 0;
+            int b = 0;
+            for (int i = 0; i < r.records; i++) {
+                if (b < r.bad.size() && r.bad.get(b).line == i) b++;
+                else kept[k++] = r.crcs[i];
+            }
+            ChecksumFile.save(crcFile, Files.size(binFile), kept, k);
+            return r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock. Problem.line is the record's position in the log.
+    // Like LogVerifier, a record whose checksum turns up elsewhere in the stored list
+    // has only moved and isn't flagged.
+    //
+    // The file is mapped and cut into chunks at record boundaries, found by walking the
+    // length prefixes alone; the chunks are then decoded and checksummed in parallel.
+    private LogVerifier.Report scan(ChecksumFile.Loaded stored) throws Exception {
+        long t0 = System.nanoTime();
+        LogVerifier.Report r = new LogVerifier.Report();
+        r.noChecksums = stored == null;
+        r.crcs = new int[0];
+        if (!Files.exists(binFile)) {
+            r.missing = stored == null ? 0 : stored.crcs.length;
+            return r;
+        }
+        int[] known = stored == null ? new int[0] : stored.crcs.clone();
+        Arrays.sort(known);
+
+        try (FileChannel ch = FileChannel.open(binFile, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IllegalStateException(binFile + " is too large to scan");
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] header = new byte[(int) Math.min(size, RecordCodec.HEADER_BYTES)];
+            map.get(0, header);
+            if (RecordCodec.readHeader(header) < 0) {
+                throw new IllegalStateException(binFile + " is not a workout log (bad header)");
+            }
+            r.bytes = size;
+
+            List<Chunk> chunks = chunks(map);
+            chunks.parallelStream().forEach(c -> {
+                try {
+                    scanChunk(map, c, stored, known);
+                } catch (Exception e) {
+                    throw new IllegalStateException("couldn't read " + binFile + " at " + c.start + ": " + e.getMessage(), e);
+                }
+            });
+
+            int total = 0;
+            for (Chunk c : chunks) total += c.records;
+            r.records = total;
+            r.crcs = new int[total];
+            for (Chunk c : chunks) {
+                System.arraycopy(c.crcs, 0, r.crcs, c.first, c.records);
+                r.bad.addAll(c.bad);
+            }
+        }
+        if (stored != null) {
+            r.checked = Math.min(stored.crcs.length, r.records);
+            r.missing = Math.max(0, stored.crcs.length - r.records);
+        }
+        r.millis = (System.nanoTime() - t0) / 1_000_000;
+        return r;
+    }
+
+    // A run of whole records, [start, end) in the file; first is the first one's position in the log.
+    private static class Chunk {
+        final int start;
+        final int first;
+        int end;
+        int records;
+        int[] crcs = new int[1024];
+        List<LogVerifier.Problem> bad = new ArrayList<>();
+
+        Chunk(int start, int first) {
+            this.start = start;
+            this.first = first;
+        }
+    }
+
+    // Splits the file the way a serial read would see it: a record that can't be read
+    // ends where its length prefix says, or at the end of the file if that runs past it.
+    private static List<Chunk> chunks(MappedByteBuffer map) {
+        int size = map.limit();
+        int cores = Runtime.getRuntime().availableProcessors();
+        long target = Math.min(LogVerifier.MAX_CHUNK, Math.max(LogVerifier.MIN_CHUNK, size / (cores * 4L)));
+        List<Chunk> out = new ArrayList<>();
+        Chunk c = new Chunk(RecordCodec.HEADER_BYTES, 0);
+        if (cores == 1 || size - c.start <= target) {
+            // nothing to share out, so skip the walk
+            c.end = Math.max(c.start, size);
+            out.add(c);
+            return out;
+        }
+        RecordCodec.Reader walk = new RecordCodec.Reader(map, RecordCodec.HEADER_BYTES);
+        int records = 0;
+        while (walk.hasNext()) {
+            if (walk.position() - c.start >= target) {
+                c.end = walk.position();
+                out.add(c);
+                c = new Chunk(walk.position(), records);
+            }
+            int end = walk.frameEnd();
+            walk.seek(end < 0 ? size : end);
+            records++;
+        }
+        c.end = Math.max(c.start, size);
+        out.add(c);
+        return out;
+    }
+
+    private static void scanChunk(MappedByteBuffer map, Chunk c, ChecksumFile.Loaded stored, int[] known) {
+        // a slice per chunk: readers share the mapping but not a position
+        ByteBuffer b = map.slice(c.start, c.end - c.start);
+        int size = b.limit();
+        RecordCodec.Reader reader = new RecordCodec.Reader(b, 0);
+        while (reader.hasNext()) {
+            int start = reader.position();
+            String reason = null;
+            if (reader.next() == null) {
+                int end = reader.frameEnd();
+                reason = end < 0 ? "incomplete record at the end of the file" : "unreadable record";
+                reader.seek(end < 0 ? size : end);
+            }
+            int end = reader.position();
+            int crc = ChecksumFile.of(b, start, end);
+            int line = c.first + c.records;
+            if (reason == null && stored != null && line < stored.crcs.length && stored.crcs[line] != crc
+                    && Arrays.binarySearch(known, crc) < 0) {
+                reason = "checksum mismatch";
+            }
+            if (reason != null) {
+                LogVerifier.Problem p = new LogVerifier.Problem();
+                p.line = line;
+                p.offset = c.start + start;
+                p.length = end - start;
+                p.next = c.start + end;
+                p.reason = reason;
+                c.bad.add(p);
+            }
+            if (c.records == c.crcs.length) c.crcs = Arrays.copyOf(c.crcs, c.records * 2);
+            c.crcs[c.records++] = crc;
+        }
+    }
+
+    // Caller holds the write lock; r.bad is sorted by record. As with JSONL the
+    // quarantine entries are written before the cleaned log is moved into place.
+    private void quarantine(LogVerifier.Report r) throws Exception {
+        byte[] bytes = Files.readAllBytes(binFile);
+        backup();
+        String now = Instant.now().toString();
+        StringBuilder entries = new StringBuilder();
+        Path tmp = dataDir.resolve("workouts.bin.tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16)) {
+            int pos = 0;
+            for (LogVerifier.Problem p : r.bad) {
+                out.write(bytes, pos, (int) p.offset - pos);
+                byte[] raw = Arrays.copyOfRange(bytes, (int) p.offset, (int) p.next);
+                Workout w = new RecordCodec.Reader(raw, 0).next();
+                entries.append("{\"quarantinedAt\":\"").append(now).append("\",\"line\":").append(p.line)
+                        .append(",\"reason\":").append(JsonlRepository.jsonString(p.reason));
+                if (w != null) entries.append(",\"record\":").append(JsonlRepository.jsonString(w.toJson()));
+                else entries.append(",\"bytes\":\"").append(Base64.getEncoder().encodeToString(raw)).append('"');
+                entries.append("}").append(System.lineSeparator());
+                pos = (int) p.next;
+            }
+            out.write(bytes, pos, bytes.length - pos);
+        }
+        try (OutputStream q = Files.newOutputStream(quarantineFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            q.write(entries.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.move(tmp, binFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Caller holds the write lock and has loaded the model. A rewrite re-encodes every
+    // record from the model and checksums it afresh, so a record that was damaged when
+    // it was read but still decoded would pass for good afterwards. Refuse instead and
+    // leave it to repair(). The records were checksummed as they were read or written,
+    // so this compares those with workouts.bin.crc rather than reading the file again.
+    // skip is the record the caller is replacing or deleting anyway (-1 for none).
+    private void checkIntact(int skip) throws Exception {
+        ChecksumFile.Loaded stored = ChecksumFile.load(crcFile);
+        if (stored == null) return;
+        int[] known = null;
+        int checked = Math.min(crcCount, stored.crcs.length);
+        for (int i = 0; i < checked; i++) {
+            if (i == skip || crcs[i] == stored.crcs[i]) continue;
+            // as in scan(), a record whose checksum is elsewhere in the list has only moved
+            if (known == null) {
+                known = stored.crcs.clone();
+                Arrays.sort(known);
+            }
+            if (Arrays.binarySearch(known, crcs[i]) >= 0) continue;
+            throw new IllegalStateException(binFile + " record " + (i + 1)
+                    + " failed verification (checksum mismatch); run verify and repair before changing the log");
+        }
+    }
+
+    // ---------- migration ----------
+
+    // Converts <dataDir>/workouts.jsonl to workouts.bin and keeps the original as
+    // workouts.jsonl.migrated. Returns the number of records converted.
+    public static int migrate(Path dataDir) throws Exception {
+        BinaryRepository repo = new BinaryRepository(dataDir);
+        if (Files.exists(repo.binFile)) {
+            throw new IllegalStateException(repo.binFile + " already exists");
+        }
+        if (!Files.exists(repo.legacyFile)) {
+            throw new IllegalStateException("Nothing to migrate: " + repo.legacyFile + " not found");
+        }
+        repo.lock.writeLock().lock();
+        try {
+            repo.loadForWrite();
+            return repo.model.size();
+        } finally {
+            repo.lock.writeLock().unlock();
+        }
+    }
+
+    // ---------- loading ----------
+
+    private void lockForRead() throws Exception {
+        lock.readLock().lock();
+        if (model != null && currentSize() == loadedSize) return;
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            load();
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock; afterwards model and hashes match workouts.bin
+    private void loadForWrite() throws Exception {
+        load();
+        if (tornAt >= 0) cutTornTail();
+        if (fileVersion > RecordCodec.VERSION) {
+            // rewriting would drop the fields we don't know about
+            throw new IllegalStateException(binFile + " was written by a newer version (format "
+                    + fileVersion + "); refusing to modify it");
+        }
+        if (!Files.exists(binFile)) {
+            writeAll(model);
+            if (legacy) {
+                Files.move(legacyFile, dataDir.resolve("workouts.jsonl.migrated"), StandardCopyOption.REPLACE_EXISTING);
+                // JSONL-only caches
+                Files.deleteIfExists(dataDir.resolve("workouts.snapshot"));
+                Files.deleteIfExists(dataDir.resolve("workouts.hashes"));
+                legacy = false;
+            }
+        }
+        if (hashes == null) {
+            hashes = new LongHashSet(model.size());
+            for (Workout w : model) hashes.add(ContentHash.of(w));
+        }
+    }
+
+    // caller holds the write lock
+    private void load() throws Exception {
+        if (model != null && currentSize() == loadedSize) return;
+        hashes = null;
+        if (!Files.exists(binFile)) {
+            model = new ArrayList<>();
+            legacy = Files.exists(legacyFile);
+            if (legacy) {
+                for (String line : Files.readAllLines(legacyFile, StandardCharsets.UTF_8)) {
+                    if (!line.isBlank()) model.add(JsonlRepository.parseWorkout(line));
+                }
+            }
+            crcCount = 0;
+            loadedSize = currentSize();
+            return;
+        }
+
+        legacy = false;
+        tornAt = -1;
+        byte[] bytes = Files.readAllBytes(binFile);
+        int version = RecordCodec.readHeader(bytes);
+        if (version < 0) {
+            throw new IllegalStateException(binFile + " is not a workout log (bad header)");
+        }
+        fileVersion = version;
+        List<Workout> out = new ArrayList<>();
+        int[] sums = new int[1024];
+        RecordCodec.Reader r = new RecordCodec.Reader(bytes, RecordCodec.HEADER_BYTES);
+        while (r.hasNext()) {
+            int start = r.position();
+            Workout w = r.next();
+            if (w == null) break;
+            if (out.size() == sums.length) sums = Arrays.copyOf(sums, sums.length * 2);
+            sums[out.size()] = ChecksumFile.of(bytes, start, r.position());
+            out.add(w);
+        }
+        // Reading never changes the file: a torn tail is only skipped here (and cut off
+        // by the next write), damage further in stops the load.
+        if (r.position() < bytes.length) {
+            if (r.frameEnd() >= 0) {
+                throw new IllegalStateException(binFile + " has an unreadable record at byte " + r.position()
+                        + "; restore workouts.bin.bak or repair the log");
+            }
+            tornAt = r.position();
+            System.err.println("Warning: ignoring " + (bytes.length - tornAt)
+                    + " bytes of an incomplete record at the end of " + binFile);
+        }
+        model = out;
+        crcs = sums;
+        crcCount = out.size();
+        sorted = null;
+        loadedSize = bytes.length;
+    }
+
+    // Caller holds the write lock. The tail is read again first: an append that was
+    // still in progress when it was seen has finished by now and reads normally.
+    // Only a tail that is still incomplete is cut off, after saving a copy.
+    private void cutTornTail() throws Exception {
+        model = null;
+        load();
+        if (tornAt < 0) return;
+        Path copy = dataDir.resolve("workouts.bin.torn");
+        Files.copy(binFile, copy, StandardCopyOption.REPLACE_EXISTING);
+        System.err.println("Warning: cutting " + (loadedSize - tornAt) + " bytes of an incomplete record off "
+                + binFile + " (copy kept as " + copy + ")");
+        try (FileChannel ch = FileChannel.open(binFile, StandardOpenOption.WRITE)) {
+            ch.truncate(tornAt);
+        }
+        loadedSize = tornAt;
+        tornAt = -1;
+    }
+
+    // workouts.bin's size, or the legacy file's while we're still reading that
+    private long currentSize() throws Exception {
+        if (Files.exists(binFile)) return Files.size(binFile);
+        return Files.exists(legacyFile) ? -2 - Files.size(legacyFile) : 0;
+    }
+
+    // caller holds the write lock
+    private void writeAll(List<Workout> workouts) throws Exception {
+        backup();
+
+        Path tmp = dataDir.resolve("workouts.bin.tmp");
+        LongHashSet set = new LongHashSet(workouts.size());
+        int[] crcs = new int[workouts.size()];
+        int n = 0;
+        long size;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16)) {
+            byte[] header = RecordCodec.header();
+            out.write(header);
+            size = header.length;
+            for (Workout w : workouts) {
+                byte[] record = RecordCodec.encode(w);
+                out.write(record);
+                size += record.length;
+                set.add(ContentHash.of(w));
+                crcs[n++] = ChecksumFile.of(record, 0, record.length);
+            }
+        }
+        Files.move(tmp, binFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        model = new ArrayList<>(workouts);
+        this.crcs = crcs;
+        crcCount = n;
+        sorted = null;
+        hashes = set;
+        loadedSize = size;
+        fileVersion = RecordCodec.VERSION;
+        ChecksumFile.save(crcFile, size, crcs, n);
+    }
+
+    private void backup() {
+        if (!Files.exists(binFile)) return;
+        try {
+            Files.copy(binFile, dataDir.resolve("workouts.bin.bak"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            System.err.println("Warning: couldn't create backup: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io;
+
+import model.Workout;
+
+import java.util.regex.Pattern;
+
+// One entry in the change feed. record is the workout's JSON line (null for deletes).
+// key names the record the event is about (the old one, for updates and deletes),
+// so followers apply it by identity rather than by line position.
+public class ChangeEvent {
+    public enum Op { APPEND, UPDATE, DELETE }
+
+    // ids that can go into the feed as-is; anything else is keyed by content
+    private static final Pattern PLAIN_ID = Pattern.compile("[A-Za-z0-9._:-]{1,128}");
+
+    public final long seq;
+    public final Op op;
+    public final String key;     // see keyOf; null in events written before keys existed
+    public final int index;      // leader's line index for UPDATE / DELETE, -1 for APPEND
+    public final String record;
+
+    public ChangeEvent(long seq, Op op, String key, int index, String record) {
+        this.seq = seq;
+        this.op = op;
+        this.key = key;
+        this.index = index;
+        this.record = record;
+    }
+
+    // The record's id, or a content hash for records logged without one.
+    public static String keyOf(Workout w) {
+        if (w.id != null && PLAIN_ID.matcher(w.id).matches()) return w.id;
+        return "#" + Long.toHexString(ContentHash.of(w));
+    }
+
+    // Same as keyOf(Workout), decoding only the id when the line has one.
+    public static String keyOf(String line) {
+        String id = LazyWorkout.of(line).id();
+        if (id != null && PLAIN_ID.matcher(id).matches()) return id;
+        return keyOf(JsonlRepository.parseWorkout(line));
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder()
+            .append("{\"seq\":").append(seq).append(",")
+            .append("\"op\":\"").append(op).append("\",");
+        if (key != null) {
+            sb.append("\"key\":\"").append(key).append("\",");
+        }
+        sb.append("\"index\":").append(index);
+        if (record != null) {
+            sb.append(",\"record\":").append(record);
+        }
+        return sb.append("}").toString();
+    }
+
+    public static ChangeEvent fromJson(String json) {
+        long seq = Long.parseLong(JsonlRepository.extract(json, "\"seq\":", ",").trim());
+        Op op = Op.valueOf(JsonlRepository.extract(json, "\"op\":\"", "\""));
+        String key = null;
+        int k = json.indexOf("\"key\":\"");
+        int r = json.indexOf("\"record\":");
+        if (k >= 0 && (r < 0 || k < r)) key = JsonlRepository.extract(json, "\"key\":\"", "\"");
+        String indexStr = JsonlRepository.extract(json, "\"index\":", ",");
+        if (indexStr == null) indexStr = JsonlRepository.extract(json, "\"index\":", "}");
+        int index = JsonlRepository.safeInt(indexStr);
+
+        String record = null;
+        if (r >= 0) {
+            record = json.substring(r + "\"record\":".length(), json.lastIndexOf('}')).trim();
+        }
+        return new ChangeEvent(seq, op, key, index, record);
+    }
+}
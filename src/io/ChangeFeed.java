@@ -0,0 +1,281 @@
+package io;
+
+import model.Workout;
+
+import java.io.BufferedWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// Publishes every write made through an ObservableRepository as a numbered event
+// in <dataDir>/changes.jsonl, and every snapshotEvery events writes a full snapshot
+// to <dataDir>/snapshots/workouts-<seq>.jsonl and drops the events it covers.
+//
+// Several processes may publish into the same feed. Each event gets its seq under
+// a lock on <dataDir>/changes.lock, from the feed's last event as it is on disk, so
+// no two processes hand out the same number.
+//
+// A follower that is behind the oldest remaining event restores the latest
+// snapshot and replays from there; see FollowerReplicator.
+public class ChangeFeed implements RepositoryListener {
+    private static final String SNAPSHOT_PREFIX = "workouts-";
+    private static final String SNAPSHOT_SUFFIX = ".jsonl";
+
+    private final WorkoutRepository source;
+    private final Path feedFile;
+    private final Path lockFile;
+    private final Path snapshotDir;
+    private final int snapshotEvery;
+
+    public ChangeFeed(WorkoutRepository source, Path dataDir, int snapshotEvery) throws Exception {
+        this.source = source;
+        this.feedFile = feedFile(dataDir);
+        this.lockFile = dataDir.resolve("changes.lock");
+        this.snapshotDir = snapshotDir(dataDir);
+        this.snapshotEvery = snapshotEvery;
+        Files.createDirectories(snapshotDir);
+
+        underFeedLock(() -> {
+            // first run: whatever is already in the log becomes snapshot 0
+            if (lastSeqOnDisk() < 0) writeSnapshot(0);
+            return null;
+        });
+    }
+
+    public static Path feedFile(Path dataDir) {
+        return dataDir.resolve("changes.jsonl");
+    }
+
+    public static Path snapshotDir(Path dataDir) {
+        return dataDir.resolve("snapshots");
+    }
+
+    public synchronized long lastSeq() throws Exception {
+        return underFeedLock(this::lastSeqOnDisk);
+    }
+
+    // ---------- repository events ----------
+
+    @Override
+    public synchronized void onAppend(Workout w) {
+        publish(ChangeEvent.Op.APPEND, ChangeEvent.keyOf(w), -1, w.toJson());
+    }
+
+    @Override
+    public synchronized void onReplace(int index, String oldLine, Workout replacement) {
+        publish(ChangeEvent.Op.UPDATE, keyOf(oldLine), index, replacement.toJson());
+    }
+
+    @Override
+    public synchronized void onDelete(int index, String oldLine) {
+        publish(ChangeEvent.Op.DELETE, keyOf(oldLine), index, null);
+    }
+
+    // No per-line events for a wholesale rewrite: skip a seq and snapshot, so
+    // followers see the gap and restore from the snapshot.
+    @Override
+    public synchronized void onReload() {
+        try {
+            underFeedLock(() -> {
+                writeSnapshot(lastSeqOnDisk() + 1);
+                return null;
+            });
+        } catch (Exception ex) {
+            System.err.println("Warning: couldn't write snapshot: " + ex.getMessage());
+        }
+    }
+
+    private static String keyOf(String oldLine) {
+        return oldLine == null ? null : ChangeEvent.keyOf(oldLine);
+    }
+
+    private void publish(ChangeEvent.Op op, String key, int index, String record) {
+        try {
+            underFeedLock(() -> {
+                ChangeEvent e = new ChangeEvent(lastSeqOnDisk() + 1, op, key, index, record);
+                try (BufferedWriter bw = Files.newBufferedWriter(feedFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    bw.write(e.toJson());
+                    bw.write(System.lineSeparator());
+                } catch (Exception ex) {
+                    // The write itself already succeeded. Snapshot at this seq instead, so
+                    // followers have something to restore past the missing event.
+                    System.err.println("Warning: couldn't write change feed: " + ex.getMessage());
+                    writeSnapshot(e.seq);
+                    return null;
+                }
+                // counted by seq rather than per process, so several publishers still
+                // snapshot every snapshotEvery events between them
+                if (e.seq % snapshotEvery == 0) {
+                    try {
+                        writeSnapshot(e.seq);
+                    } catch (Exception ex) {
+                        System.err.println("Warning: couldn't write snapshot: " + ex.getMessage());
+                    }
+                }
+                return null;
+            });
+        } catch (Exception ex) {
+            System.err.println("Warning: couldn't publish change: " + ex.getMessage());
+        }
+    }
+
+    // Runs body holding the feed lock, which every process publishing into this
+    // feed takes before it numbers, appends or compacts anything.
+    private <T> T underFeedLock(Callable<T> body) throws Exception {
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            try {
+                return body.call();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // Caller holds the feed lock. The newest seq any process has used: the feed's
+    // last event, or the latest snapshot when the feed has been compacted past it.
+    private long lastSeqOnDisk() throws Exception {
+        return Math.max(lastEventSeq(feedFile), latestSnapshotSeq(snapshotDir));
+    }
+
+    // ---------- snapshots ----------
+
+    // Writes the current log as a snapshot for the newest seq, then compacts the
+    // feed and removes older snapshots.
+    public synchronized void snapshot() throws Exception {
+        underFeedLock(() -> {
+            writeSnapshot(Math.max(lastSeqOnDisk(), 0));
+            return null;
+        });
+    }
+
+    // Caller holds the feed lock.
+    private void writeSnapshot(long seq) throws Exception {
+        Path snap = snapshotDir.resolve(snapshotName(seq));
+        Path tmp = Files.createTempFile(snapshotDir, snapshotName(seq) + ".", ".tmp");
+        try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String line : source.readAllJsonLines()) {
+                bw.write(line);
+                bw.write(System.lineSeparator());
+            }
+        }
+        Files.move(tmp, snap, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<ChangeEvent> keep = readSince(seq);
+        Path feedTmp = Files.createTempFile(feedFile.getParent(), "changes.jsonl.", ".tmp");
+        try (BufferedWriter bw = Files.newBufferedWriter(feedTmp, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ChangeEvent e : keep) {
+                bw.write(e.toJson());
+                bw.write(System.lineSeparator());
+            }
+        }
+        Files.move(feedTmp, feedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(snapshotDir, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path p : ds) {
+                long old = snapshotSeq(p);
+                if (old >= 0 && old < seq) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    public long latestSnapshotSeq() throws Exception {
+        return latestSnapshotSeq(snapshotDir);
+    }
+
+    // ---------- reading (used by followers, possibly from another process) ----------
+
+    public List<ChangeEvent> readSince(long afterSeq) throws Exception {
+        return readSince(feedFile, afterSeq);
+    }
+
+    public static List<ChangeEvent> readSince(Path feedFile, long afterSeq) throws Exception {
+        List<ChangeEvent> out = new ArrayList<>();
+        if (!Files.exists(feedFile)) return out;
+        List<String> lines = Files.readAllLines(feedFile, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank()) continue;
+            ChangeEvent e;
+            try {
+                e = ChangeEvent.fromJson(line);
+            } catch (RuntimeException ex) {
+                // the last event may still be being written; it's picked up next time
+                if (i == lines.size() - 1) break;
+                throw ex;
+            }
+            if (e.seq > afterSeq) out.add(e);
+        }
+        return out;
+    }
+
+    // Seq of the feed's last event, read back from the end of the file so numbering
+    // an event doesn't mean reading the whole feed; -1 when it has none.
+    static long lastEventSeq(Path feedFile) throws Exception {
+        if (!Files.exists(feedFile)) return -1;
+        try (FileChannel ch = FileChannel.open(feedFile, StandardOpenOption.READ)) {
+            long pos = ch.size();
+            byte[] tail = new byte[0];
+            while (pos > 0) {
+                int n = (int) Math.min(4096, pos);
+                pos -= n;
+                ByteBuffer buf = ByteBuffer.allocate(n + tail.length);
+                buf.limit(n);
+                while (buf.hasRemaining()) {
+                    if (ch.read(buf, pos + buf.position()) < 0) break;
+                }
+                buf.limit(buf.capacity());
+                buf.put(tail);
+                tail = buf.array();
+
+                String text = new String(tail, StandardCharsets.UTF_8).stripTrailing();
+                int nl = text.lastIndexOf('\n');
+                if (nl < 0 && pos > 0) continue;
+                String seq = JsonlRepository.extract(text.substring(nl + 1), "\"seq\":", ",");
+                if (seq != null) return Long.parseLong(seq.trim());
+                // a half-written last line: fall back to the last complete event
+                List<ChangeEvent> all = readSince(feedFile, -1);
+                return all.isEmpty() ? -1 : all.get(all.size() - 1).seq;
+            }
+            return -1;
+        }
+    }
+
+    public static long latestSnapshotSeq(Path snapshotDir) throws Exception {
+        long best = -1;
+        if (!Files.isDirectory(snapshotDir)) return best;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(snapshotDir, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path p : ds) best = Math.max(best, snapshotSeq(p));
+        }
+        return best;
+    }
+
+    public static Path snapshotFile(Path snapshotDir, long seq) {
+        return snapshotDir.resolve(snapshotName(seq));
+    }
+
+    private static String snapshotName(long seq) {
+        return SNAPSHOT_PREFIX + String.format("%012d", seq) + SNAPSHOT_SUFFIX;
+    }
+
+    private static long snapshotSeq(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
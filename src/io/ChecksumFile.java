@@ -0,0 +1,109 @@
+package io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Per-record CRC32C checksums for workouts.jsonl: header (magic, version, watermark =
+// log size when they were written, count) followed by one checksum per line, in line
+// order. A checksum covers the line's bytes without its line terminator.
+// BinaryRepository keeps the same file as workouts.bin.crc, one checksum per record
+// covering its bytes, length prefix included.
+//
+// Unlike the content-hash file, a stale watermark doesn't make the checksums useless:
+// the log changing behind the repository's back is exactly what LogVerifier is for.
+class ChecksumFile {
+    private static final int MAGIC = 0x424A4A4B; // "BJJK"
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 + 4 + 8 + 4;
+
+    static class Loaded {
+        long watermark;
+        int[] crcs;
+    }
+
+    static int of(byte[] b, int start, int end) {
+        CRC32C crc = new CRC32C();
+        crc.update(b, start, end - start);
+        return (int) crc.getValue();
+    }
+
+    // reads b[start, end) in place, leaving b's position alone
+    static int of(ByteBuffer b, int start, int end) {
+        CRC32C crc = new CRC32C();
+        crc.update(b.slice(start, end - start));
+        return (int) crc.getValue();
+    }
+
+    static int of(String line) {
+        byte[] b = line.getBytes(StandardCharsets.UTF_8);
+        return of(b, 0, b.length);
+    }
+
+    // null when missing or unreadable
+    static Loaded load(Path file) {
+        if (!Files.exists(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < HEADER || buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            Loaded l = new Loaded();
+            l.watermark = buf.getLong();
+            int count = buf.getInt();
+            if (count < 0 || buf.remaining() < count * 4L) return null;
+            l.crcs = new int[count];
+            buf.asIntBuffer().get(l.crcs);
+            return l;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static void save(Path file, long watermark, int[] crcs, int count) throws Exception {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(watermark);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) out.writeInt(crcs[i]);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void save(Path file, long watermark, List<String> lines) throws Exception {
+        int[] crcs = new int[lines.size()];
+        for (int i = 0; i < crcs.length; i++) crcs[i] = of(lines.get(i));
+        save(file, watermark, crcs, crcs.length);
+    }
+
+    // Adds one line's checksum after an append that grew the log from oldSize to
+    // newSize. Only done while the file still matches oldSize, so the checksums never
+    // slip out of line with the records; otherwise the file is left for verify to sort out.
+    static void appendOne(Path file, long oldSize, long newSize, int crc) throws Exception {
+        if (oldSize == 0) {
+            save(file, newSize, new int[]{crc}, 1);
+            return;
+        }
+        if (!Files.exists(file)) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (raf.length() < HEADER || raf.readInt() != MAGIC || raf.readInt() != VERSION) return;
+            if (raf.readLong() != oldSize) return;
+            int count = raf.readInt();
+            raf.seek(HEADER + count * 4L);
+            raf.writeInt(crc);
+            raf.seek(8);
+            raf.writeLong(newSize);
+            raf.writeInt(count + 1);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package io;
+
+import model.Round;
+import model.Workout;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Objects;
+
+// Writes workouts and rounds to one self-describing columnar file for analytics.
+//
+// Layout (all ints big-endian unless noted as varints, strings as in RecordCodec):
+//   "BJJC" magic, version byte
+//   row groups, each: varint row count, then per column a varint byte length and
+//     the encoded values, so a reader can skip columns it doesn't need
+//   footer: schema (tables, their columns with type and encoding), then per row
+//     group its table, file offset, row count and min/max date
+//   footer length (4 bytes), "BJJC"
+//
+// Encodings: PLAIN strings/varints, RLE (varint run length + value) for
+// workoutType and beltLevel, DELTA for dates (days since the previous date in
+// the group, zigzag + 1; 0 = no date). A row group is flushed every
+// ROWS_PER_GROUP rows, so memory stays bounded however long the log is.
+public class ColumnarExporter {
+    static final int MAGIC = 0x424A4A43; // "BJJC"
+    static final int VERSION = 1;
+    static final int ROWS_PER_GROUP = 8192;
+
+    static final int TYPE_STRING = 0, TYPE_INT = 1, TYPE_DATE = 2;
+    static final int PLAIN = 0, RLE = 1, DELTA = 2;
+
+    public static class Result {
+        public int workouts;
+        public int rounds;
+        public int rowGroups;
+    }
+
+    private final OutputStream out;
+    private long position = 0;
+    private final ByteArrayOutputStream groups = new ByteArrayOutputStream(); // footer entries
+    private final Result result = new Result();
+
+    private final Table workouts = new Table("workouts",
+            new StringColumn("id", PLAIN),
+            new DateColumn("date"),
+            new StringColumn("workoutType", RLE),
+            new StringColumn("drills", PLAIN),
+            new IntColumn("roundsCount"),
+            new StringColumn("notes", PLAIN));
+
+    private final Table rounds = new Table("rounds",
+            new StringColumn("workoutId", PLAIN),
+            new DateColumn("date"),
+            new IntColumn("roundIndex"),
+            new StringColumn("beltLevel", RLE),
+            new StringColumn("partnerSize", PLAIN),
+            new IntColumn("partnerAge"),
+            new IntColumn("roundDurationMinutes"),
+            new IntColumn("timesYouWereSubmitted"),
+            new StringColumn("submissionTypesAgainst", PLAIN),
+            new IntColumn("timesYouSubmittedPartner"),
+            new StringColumn("submissionTypesFor", PLAIN),
+            new StringColumn("observations", PLAIN));
+
+    private ColumnarExporter(OutputStream out) {
+        this.out = out;
+    }
+
+    // One pass over the repository; the file is written to a temp name and moved into place.
+    public static Result export(WorkoutRepository repo, Path file) throws Exception {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Result result;
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16)) {
+            ColumnarExporter x = new ColumnarExporter(os);
+            x.write(new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION});
+            try {
+                repo.forEachWorkout(x::add);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            x.finish();
+            result = x.result;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return result;
+    }
+
+    private void add(Workout w) {
+        // row-group date stats only count dates the date column could store
+        int c = 0;
+        workouts.string(c++, w.id);
+        String date = workouts.date(c++, w.date) ? w.date : null;
+        workouts.string(c++, w.workoutType);
+        workouts.string(c++, w.drills);
+        workouts.integer(c++, w.roundsCount);
+        workouts.string(c, w.notes);
+        endRow(workouts, date);
+        result.workouts++;
+
+        for (int i = 0; i < w.rounds.size(); i++) {
+            Round r = w.rounds.get(i);
+            c = 0;
+            rounds.string(c++, w.id);
+            rounds.date(c++, w.date);
+            rounds.integer(c++, i + 1);
+            rounds.string(c++, r.beltLevel);
+            rounds.string(c++, r.partnerSize);
+            rounds.integer(c++, r.partnerAge);
+            rounds.integer(c++, r.roundDurationMinutes);
+            rounds.integer(c++, r.timesYouWereSubmitted);
+            rounds.string(c++, r.submissionTypesAgainst);
+            rounds.integer(c++, r.timesYouSubmittedPartner);
+            rounds.string(c++, r.submissionTypesFor);
+            rounds.string(c, r.observations);
+            endRow(rounds, date);
+            result.rounds++;
+        }
+    }
+
+    private void endRow(Table t, String date) {
+        t.rows++;
+        if (date != null) {
+            if (t.minDate == null || date.compareTo(t.minDate) < 0) t.minDate = date;
+            if (t.maxDate == null || date.compareTo(t.maxDate) > 0) t.maxDate = date;
+        }
+        if (t.rows >= ROWS_PER_GROUP) {
+            try {
+                flush(t);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void flush(Table t) throws IOException {
+        if (t.rows == 0) return;
+        ByteArrayOutputStream group = new ByteArrayOutputStream();
+        RecordCodec.writeVarint(group, t.rows);
+        for (Column col : t.columns) {
+            byte[] data = col.finish();
+            RecordCodec.writeVarint(group, data.length);
+            group.write(data, 0, data.length);
+        }
+
+        RecordCodec.writeVarint(groups, t == workouts ? 0 : 1);
+        writeLong(groups, position);
+        RecordCodec.writeVarint(groups, t.rows);
+        RecordCodec.writeString(groups, t.minDate);
+        RecordCodec.writeString(groups, t.maxDate);
+        result.rowGroups++;
+
+        write(group.toByteArray());
+        t.reset();
+    }
+
+    private void finish() throws IOException {
+        flush(workouts);
+        flush(rounds);
+
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        RecordCodec.writeVarint(footer, 2);
+        for (Table t : new Table[]{workouts, rounds}) {
+            RecordCodec.writeString(footer, t.name);
+            RecordCodec.writeVarint(footer, t.columns.length);
+            for (Column col : t.columns) {
+                RecordCodec.writeString(footer, col.name);
+                RecordCodec.writeVarint(footer, col.type);
+                RecordCodec.writeVarint(footer, col.encoding);
+            }
+        }
+        RecordCodec.writeVarint(footer, result.rowGroups);
+        footer.write(groups.toByteArray(), 0, groups.size());
+
+        write(footer.toByteArray());
+        int len = footer.size();
+        write(new byte[]{(byte) (len >>> 24), (byte) (len >>> 16), (byte) (len >>> 8), (byte) len,
+                (byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC});
+    }
+
+    private void write(byte[] b) throws IOException {
+        out.write(b);
+        position += b.length;
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long v) {
+        for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (v >>> shift));
+    }
+
+    // ---------- tables and columns ----------
+
+    private static class Table {
+        final String name;
+        final Column[] columns;
+        int rows;
+        String minDate;
+        String maxDate;
+
+        Table(String name, Column... columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+
+        void string(int c, String v) {
+            ((StringColumn) columns[c]).add(v);
+        }
+
+        void integer(int c, Integer v) {
+            ((IntColumn) columns[c]).add(v == null ? 0 : v);
+        }
+
+        boolean date(int c, String v) {
+            return ((DateColumn) columns[c]).add(v);
+        }
+
+        void reset() {
+            rows = 0;
+            minDate = null;
+            maxDate = null;
+        }
+    }
+
+    private abstract static class Column {
+        final String name;
+        final int type;
+        final int encoding;
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        Column(String name, int type, int encoding) {
+            this.name = name;
+            this.type = type;
+            this.encoding = encoding;
+        }
+
+        // encoded values for the current row group; the column is empty again afterwards
+        byte[] finish() {
+            byte[] b = buf.toByteArray();
+            buf.reset();
+            return b;
+        }
+    }
+
+    private static class StringColumn extends Column {
+        private String run;
+        private int runLength = 0;
+
+        StringColumn(String name, int encoding) {
+            super(name, TYPE_STRING, encoding);
+        }
+
+        void add(String v) {
+            if (encoding == PLAIN) {
+                RecordCodec.writeString(buf, v);
+                return;
+            }
+            if (runLength > 0 && Objects.equals(run, v)) {
+                runLength++;
+                return;
+            }
+            endRun();
+            run = v;
+            runLength = 1;
+        }
+
+        private void endRun() {
+            if (runLength == 0) return;
+            RecordCodec.writeVarint(buf, runLength);
+            RecordCodec.writeString(buf, run);
+            runLength = 0;
+        }
+
+        @Override
+        byte[] finish() {
+            endRun();
+            return super.finish();
+        }
+    }
+
+    private static class IntColumn extends Column {
+        IntColumn(String name) {
+            super(name, TYPE_INT, PLAIN);
+        }
+
+        void add(int v) {
+            RecordCodec.writeInt(buf, v);
+        }
+    }
+
+    private static class DateColumn extends Column {
+        private long previous = 0; // epoch day; each group starts from 0
+
+        DateColumn(String name) {
+            super(name, TYPE_DATE, DELTA);
+        }
+
+        // false when v isn't a valid yyyy-MM-dd date and was stored as "no date"
+        boolean add(String v) {
+            long day;
+            try {
+                day = LocalDate.parse(v).toEpochDay();
+            } catch (Exception e) {
+                RecordCodec.writeVarint(buf, 0);
+                return false;
+            }
+            long delta = day - previous;
+            previous = day;
+            RecordCodec.writeVarint(buf, (int) ((delta << 1) ^ (delta >> 63)) + 1);
+            return true;
+        }
+
+        @Override
+        byte[] finish() {
+            previous = 0;
+            return super.finish();
+        }
+    }
+}
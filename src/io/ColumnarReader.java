@@ -0,0 +1,232 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads files written by ColumnarExporter. The footer (schema and row-group index)
+// is read when the file is opened; row groups are read one at a time, and only the
+// columns asked for are decoded, the rest are skipped by their length prefix.
+//
+// Values come back as String for string and date columns (dates as yyyy-MM-dd,
+// null when the record had no valid date) and Integer for int columns.
+public class ColumnarReader implements AutoCloseable {
+    private static final String[] TYPES = {"string", "int", "date"};
+    private static final String[] ENCODINGS = {"PLAIN", "RLE", "DELTA"};
+
+    public static class Column {
+        public final String name;
+        public final String type;     // string, int or date
+        public final String encoding; // PLAIN, RLE or DELTA
+        final int typeId;
+        final int encodingId;
+
+        Column(String name, int typeId, int encodingId) {
+            this.name = name;
+            this.typeId = typeId;
+            this.encodingId = encodingId;
+            this.type = typeId >= 0 && typeId < TYPES.length ? TYPES[typeId] : "unknown(" + typeId + ")";
+            this.encoding = encodingId >= 0 && encodingId < ENCODINGS.length ? ENCODINGS[encodingId] : "unknown(" + encodingId + ")";
+        }
+    }
+
+    public static class Table {
+        public final String name;
+        public final List<Column> columns = new ArrayList<>();
+
+        Table(String name) {
+            this.name = name;
+        }
+
+        // position of the named column, or -1
+        public int column(String name) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).name.equals(name)) return i;
+            }
+            return -1;
+        }
+    }
+
+    public static class RowGroup {
+        public final Table table;
+        public final long offset;
+        public final int rows;
+        public final String minDate;
+        public final String maxDate;
+        long end; // where the next row group (or the footer) starts
+
+        RowGroup(Table table, long offset, int rows, String minDate, String maxDate) {
+            this.table = table;
+            this.offset = offset;
+            this.rows = rows;
+            this.minDate = minDate;
+            this.maxDate = maxDate;
+        }
+    }
+
+    public final int version;
+    public final List<Table> tables = new ArrayList<>();
+    public final List<RowGroup> rowGroups = new ArrayList<>();
+    private final FileChannel ch;
+
+    public ColumnarReader(Path file) throws Exception {
+        ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size < 5 + 8) throw new IllegalStateException("Not a columnar export: " + file);
+            ByteBuffer head = read(0, 5);
+            if (head.getInt() != ColumnarExporter.MAGIC) throw new IllegalStateException("Not a columnar export: " + file);
+            version = head.get() & 0xFF;
+
+            ByteBuffer tail = read(size - 8, 8);
+            int footerLen = tail.getInt();
+            if (tail.getInt() != ColumnarExporter.MAGIC || footerLen < 0 || footerLen > size - 13) {
+                throw new IllegalStateException("Columnar export has no valid footer: " + file);
+            }
+            long footerStart = size - 8 - footerLen;
+            Cursor f = new Cursor(read(footerStart, footerLen));
+
+            int tableCount = f.varint();
+            for (int t = 0; t < tableCount; t++) {
+                Table table = new Table(f.string());
+                int columns = f.varint();
+                for (int c = 0; c < columns; c++) {
+                    table.columns.add(new Column(f.string(), f.varint(), f.varint()));
+                }
+                tables.add(table);
+            }
+            int groups = f.varint();
+            for (int g = 0; g < groups; g++) {
+                Table table = tables.get(f.varint());
+                long offset = f.buf.getLong();
+                rowGroups.add(new RowGroup(table, offset, f.varint(), f.string(), f.string()));
+            }
+            if (f.buf.hasRemaining()) throw new IllegalStateException("Unexpected bytes after the row-group index");
+            for (int g = 0; g < rowGroups.size(); g++) {
+                rowGroups.get(g).end = g + 1 < rowGroups.size() ? rowGroups.get(g + 1).offset : footerStart;
+            }
+        } catch (Exception e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public Table table(String name) {
+        for (Table t : tables) {
+            if (t.name.equals(name)) return t;
+        }
+        return null;
+    }
+
+    // Decoded values of the named columns of one row group: [column][row], in the
+    // order the columns were asked for.
+    public Object[][] read(RowGroup g, String... columns) throws Exception {
+        int[] wanted = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            wanted[i] = g.table.column(columns[i]);
+            if (wanted[i] < 0) throw new IllegalArgumentException("No column " + columns[i] + " in " + g.table.name);
+        }
+
+        Cursor in = new Cursor(read(g.offset, (int) (g.end - g.offset)));
+        int rows = in.varint();
+        if (rows != g.rows) {
+            throw new IllegalStateException("Row group at " + g.offset + " has " + rows + " rows, footer says " + g.rows);
+        }
+        Object[][] out = new Object[columns.length][];
+        for (int c = 0; c < g.table.columns.size(); c++) {
+            int len = in.varint();
+            int start = in.buf.position();
+            for (int i = 0; i < wanted.length; i++) {
+                if (wanted[i] != c) continue;
+                in.buf.position(start);
+                out[i] = decode(g.table.columns.get(c), in, rows);
+                if (in.buf.position() != start + len) {
+                    throw new IllegalStateException("Column " + columns[i] + " at " + g.offset
+                            + " decoded " + (in.buf.position() - start) + " of " + len + " bytes");
+                }
+            }
+            in.buf.position(start + len);
+        }
+        if (in.buf.hasRemaining()) throw new IllegalStateException("Unexpected bytes after row group at " + g.offset);
+        return out;
+    }
+
+    private static Object[] decode(Column col, Cursor in, int rows) {
+        Object[] v = new Object[rows];
+        if (col.typeId == ColumnarExporter.TYPE_INT && col.encodingId == ColumnarExporter.PLAIN) {
+            for (int r = 0; r < rows; r++) v[r] = in.zigzag();
+        } else if (col.typeId == ColumnarExporter.TYPE_STRING && col.encodingId == ColumnarExporter.PLAIN) {
+            for (int r = 0; r < rows; r++) v[r] = in.string();
+        } else if (col.typeId == ColumnarExporter.TYPE_STRING && col.encodingId == ColumnarExporter.RLE) {
+            int r = 0;
+            while (r < rows) {
+                int run = in.varint();
+                if (run <= 0 || r + run > rows) throw new IllegalStateException("Bad run length " + run + " in " + col.name);
+                String s = in.string();
+                for (int k = 0; k < run; k++) v[r++] = s;
+            }
+        } else if (col.typeId == ColumnarExporter.TYPE_DATE && col.encodingId == ColumnarExporter.DELTA) {
+            long day = 0; // each group starts from 0
+            for (int r = 0; r < rows; r++) {
+                int z = in.varint();
+                if (z == 0) continue; // no date
+                z--;
+                day += (z >>> 1) ^ -(z & 1);
+                v[r] = LocalDate.ofEpochDay(day).toString();
+            }
+        } else {
+            throw new IllegalStateException("Unsupported " + col.type + " column encoding " + col.encoding + " for " + col.name);
+        }
+        return v;
+    }
+
+    private ByteBuffer read(long pos, int len) throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) throw new IllegalStateException("Columnar export is truncated");
+        }
+        return buf.flip();
+    }
+
+    @Override
+    public void close() throws Exception {
+        ch.close();
+    }
+
+    // varints and strings as RecordCodec writes them
+    private static class Cursor {
+        final ByteBuffer buf;
+
+        Cursor(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        int varint() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte x = buf.get();
+                v |= (x & 0x7F) << shift;
+                if (x >= 0) return v;
+            }
+            throw new IllegalStateException("varint too long");
+        }
+
+        int zigzag() {
+            int z = varint();
+            return (z >>> 1) ^ -(z & 1);
+        }
+
+        String string() {
+            int len = varint() - 1;
+            if (len < 0) return null;
+            String s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+            buf.position(buf.position() + len);
+            return s;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io;
+
+import model.Round;
+import model.Workout;
+
+import java.nio.charset.StandardCharsets;
+
+// 64-bit fingerprint of what a workout *is*: date, type, drills and every round.
+// id and notes are left out, so a re-import or a retried save of the same session
+// hashes the same even when it got a fresh UUID.
+public class ContentHash {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public static long of(Workout w) {
+        long h = FNV_OFFSET;
+        h = mix(h, w.date);
+        h = mix(h, w.workoutType == null ? null : w.workoutType.toLowerCase());
+        h = mix(h, w.drills);
+        h = mix(h, w.rounds.size());
+        for (Round r : w.rounds) {
+            h = mix(h, r.beltLevel == null ? null : r.beltLevel.toLowerCase());
+            h = mix(h, r.partnerSize);
+            h = mix(h, nz(r.partnerAge));
+            h = mix(h, nz(r.roundDurationMinutes));
+            h = mix(h, nz(r.timesYouWereSubmitted));
+            h = mix(h, r.submissionTypesAgainst);
+            h = mix(h, nz(r.timesYouSubmittedPartner));
+            h = mix(h, r.submissionTypesFor);
+            h = mix(h, r.observations);
+        }
+        return finish(h);
+    }
+
+    // FNV-1a over the trimmed UTF-8 bytes, with a separator so ("ab","c") != ("a","bc")
+    private static long mix(long h, String s) {
+        if (s != null) {
+            for (byte b : s.trim().getBytes(StandardCharsets.UTF_8)) {
+                h ^= (b & 0xff);
+                h *= FNV_PRIME;
+            }
+        }
+        h ^= 0x1f;
+        return h * FNV_PRIME;
+    }
+
+    private static long mix(long h, int v) {
+        for (int i = 0; i < 4; i++) {
+            h ^= (v >>> (i * 8)) & 0xff;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    // splitmix64 finalizer: FNV's low bits are weak, and LongHashSet indexes by them
+    private static long finish(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+}
@@ -0,0 +1,62 @@
+package io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// On-disk copy of the content-hash set: header (magic, version, watermark = log size
+// it matches, count) followed by the hashes. Appends add one hash and bump the
+// header in place; anything that doesn't line up with the log is rebuilt by the caller.
+class ContentHashFile {
+    private static final int MAGIC = 0x424A4A48; // "BJJH"
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 + 4 + 8 + 4;
+
+    // null when missing, unreadable or not for this version of the log
+    static LongHashSet load(Path file, long watermark) {
+        if (!Files.exists(file)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < HEADER || buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            if (buf.getLong() != watermark) return null;
+            int count = buf.getInt();
+            if (buf.remaining() < count * 8L) return null;
+            LongHashSet set = new LongHashSet(count);
+            for (int i = 0; i < count; i++) set.add(buf.getLong());
+            return set;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static void save(Path file, long watermark, LongHashSet set) throws Exception {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long[] all = set.toArray();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(watermark);
+            out.writeInt(all.length);
+            for (long h : all) out.writeLong(h);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // the file must currently hold count - 1 hashes
+    static void appendOne(Path file, long watermark, int count, long hash) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(HEADER + (count - 1) * 8L);
+            raf.writeLong(hash);
+            raf.seek(8);
+            raf.writeLong(watermark);
+            raf.writeInt(count);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package io;
+
+// Thrown by append when an identical workout (same ContentHash) is already logged.
+public class DuplicateWorkoutException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    public DuplicateWorkoutException(String date) {
+        super("Duplicate workout: an entry for " + (date == null ? "(no date)" : date)
+                + " with the same type, drills and rounds already exists");
+    }
+}
@@ -0,0 +1,114 @@
+package io;
+
+import model.Workout;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs a blocking WorkoutRepository off the caller's thread.
+// Writes go through one dedicated I/O thread, so they are applied in submission
+// order. Reads fan out on virtual threads when the runtime has them (JDK 21+),
+// otherwise on a cached pool of daemon threads.
+public class ExecutorAsyncRepository implements AsyncWorkoutRepository {
+    private final WorkoutRepository delegate;
+    private final ExecutorService writer;
+    private final ExecutorService readers;
+
+    public ExecutorAsyncRepository(WorkoutRepository delegate) {
+        this.delegate = delegate;
+        this.writer = Executors.newSingleThreadExecutor(r -> daemon(r, "workout-io-writer"));
+        this.readers = newReaderExecutor();
+    }
+
+    @Override
+    public CompletableFuture<Void> append(Workout w) {
+        return submit(writer, () -> {
+            delegate.append(w);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> readAllJsonLines() {
+        return submit(readers, delegate::readAllJsonLines);
+    }
+
+    @Override
+    public CompletableFuture<Void> replaceLine(int index, Workout replacement) {
+        return submit(writer, () -> {
+            delegate.replaceLine(index, replacement);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteLine(int index) {
+        return submit(writer, () -> {
+            delegate.deleteLine(index);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> count() {
+        return submit(readers, delegate::count);
+    }
+
+    @Override
+    public CompletableFuture<List<WorkoutHit>> query(WorkoutQuery q) {
+        return submit(readers, () -> delegate.query(q));
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        readers.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("Warning: pending writes did not finish within 30s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> CompletableFuture<T> submit(ExecutorService ex, Callable<T> task) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        try {
+            ex.execute(() -> {
+                try {
+                    f.complete(task.call());
+                } catch (Throwable t) {
+                    f.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor only exists on JDK 21+, and we build on 17
+    private static ExecutorService newReaderExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> daemon(r, "workout-io-reader-" + n.incrementAndGet()));
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,147 @@
+package io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Sorts a JSONL log by date without holding it in memory.
+//
+// Pass 1 reads runLines records at a time, sorts each batch and spills it to a
+// run file. The runs are then merged up to MAX_FAN_IN at a time (more passes if
+// there are more runs than that) into the output. The sort is stable, so
+// workouts on the same day keep their logged order; undated records go last.
+class ExternalSort {
+    static final int DEFAULT_RUN_LINES = 10_000;
+    static final int MAX_FAN_IN = 64;
+
+    // ISO dates sort as strings; null/blank after everything else
+    static final Comparator<String> DATE_ORDER = (a, b) -> {
+        boolean na = a == null || a.isBlank();
+        boolean nb = b == null || b.isBlank();
+        if (na || nb) return na == nb ? 0 : (na ? 1 : -1);
+        return a.compareTo(b);
+    };
+
+    private static class Entry {
+        final String key;
+        final String line;
+
+        Entry(String line) {
+            this.line = line;
+            this.key = LazyWorkout.of(line).date();
+        }
+    }
+
+    // One open run during a merge.
+    private static class Cursor {
+        final BufferedReader in;
+        final int order; // position of the run, for stable ties
+        Entry head;
+
+        Cursor(BufferedReader in, int order) throws Exception {
+            this.in = in;
+            this.order = order;
+            advance();
+        }
+
+        void advance() throws Exception {
+            String line;
+            do {
+                line = in.readLine();
+            } while (line != null && line.isBlank());
+            head = line == null ? null : new Entry(line);
+        }
+    }
+
+    // Writes in's records to out in date order; blank lines are dropped. Returns the record count.
+    static int sortByDate(Path in, Path out, Path workDir, int runLines) throws Exception {
+        Files.createDirectories(workDir);
+        List<Path> runs = new ArrayList<>();
+        int count = 0;
+        try {
+            try (BufferedReader br = Files.newBufferedReader(in, StandardCharsets.UTF_8)) {
+                List<Entry> batch = new ArrayList<>(runLines);
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    batch.add(new Entry(line));
+                    count++;
+                    if (batch.size() == runLines) {
+                        runs.add(spill(batch, workDir, runs.size()));
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty() || runs.isEmpty()) runs.add(spill(batch, workDir, runs.size()));
+            }
+
+            int pass = 0;
+            while (runs.size() > MAX_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                    List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+                    Path next = workDir.resolve("pass" + pass + "-" + merged.size() + ".jsonl");
+                    merge(group, next);
+                    for (Path p : group) Files.deleteIfExists(p);
+                    merged.add(next);
+                }
+                runs = merged;
+                pass++;
+            }
+            merge(runs, out);
+        } finally {
+            for (Path p : runs) Files.deleteIfExists(p);
+            try {
+                Files.deleteIfExists(workDir);
+            } catch (Exception e) {
+                System.err.println("Warning: couldn't remove " + workDir + ": " + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    private static Path spill(List<Entry> batch, Path workDir, int n) throws Exception {
+        batch.sort((a, b) -> DATE_ORDER.compare(a.key, b.key)); // List.sort is stable
+        Path run = workDir.resolve("run-" + n + ".jsonl");
+        try (BufferedWriter bw = Files.newBufferedWriter(run, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry e : batch) {
+                bw.write(e.line);
+                bw.write(System.lineSeparator());
+            }
+        }
+        return run;
+    }
+
+    // k-way merge; equal dates come out in run order, which keeps the sort stable
+    private static void merge(List<Path> runs, Path out) throws Exception {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+            int c = DATE_ORDER.compare(a.head.key, b.head.key);
+            return c != 0 ? c : Integer.compare(a.order, b.order);
+        });
+        List<Cursor> open = new ArrayList<>();
+        try (BufferedWriter bw = Files.newBufferedWriter(out, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < runs.size(); i++) {
+                Cursor c = new Cursor(Files.newBufferedReader(runs.get(i), StandardCharsets.UTF_8), i);
+                open.add(c);
+                if (c.head != null) heap.add(c);
+            }
+            while (!heap.isEmpty()) {
+                Cursor c = heap.poll();
+                bw.write(c.head.line);
+                bw.write(System.lineSeparator());
+                c.advance();
+                if (c.head != null) heap.add(c);
+            }
+        } finally {
+            for (Cursor c : open) c.in.close();
+        }
+    }
+}
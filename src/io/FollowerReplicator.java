@@ -0,0 +1,177 @@
+package io;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps a follower JsonlRepository in step with a leader's ChangeFeed.
+//
+// The last applied sequence number is kept in <followerDir>/replica.seq, so after a
+// restart the follower only replays what it missed. If the events it needs have
+// already been compacted away, it restores the leader's latest snapshot first.
+//
+// A catch-up is applied in memory and written once: as plain appends when it only
+// adds records, otherwise as one rewrite. Events find their record by key, and
+// applying one that is already reflected changes nothing, so replaying events after
+// a crash between the write and replica.seq (or ones a snapshot already includes)
+// is harmless.
+public class FollowerReplicator {
+    private final Path leaderDir;
+    private final JsonlRepository follower;
+    private final Path stateFile;
+
+    public FollowerReplicator(Path leaderDir, Path followerDir) {
+        this.leaderDir = leaderDir;
+        this.follower = new JsonlRepository(followerDir);
+        this.stateFile = followerDir.resolve("replica.seq");
+    }
+
+    public JsonlRepository follower() {
+        return follower;
+    }
+
+    public long appliedSeq() throws Exception {
+        if (!Files.exists(stateFile)) return -1;
+        String s = Files.readString(stateFile, StandardCharsets.UTF_8).trim();
+        return s.isEmpty() ? -1 : Long.parseLong(s);
+    }
+
+    // Brings the follower up to date; returns the number of events applied.
+    public int catchUp() throws Exception {
+        long start = appliedSeq();
+        long applied = start;
+        List<ChangeEvent> events = ChangeFeed.readSince(ChangeFeed.feedFile(leaderDir), applied);
+        long snapSeq = ChangeFeed.latestSnapshotSeq(ChangeFeed.snapshotDir(leaderDir));
+        if (events.isEmpty() && snapSeq <= applied) return 0;
+
+        // a snapshot past the last event we can reach covers events we'll never see
+        // (compacted away, or skipped for a wholesale rewrite)
+        Replica replica;
+        if (snapSeq > reachable(events, applied)) {
+            Path snap = ChangeFeed.snapshotFile(ChangeFeed.snapshotDir(leaderDir), snapSeq);
+            replica = new Replica(Files.readAllLines(snap, StandardCharsets.UTF_8));
+            replica.restored = true;
+            applied = snapSeq;
+        } else {
+            replica = new Replica(follower.readAllJsonLines());
+        }
+
+        int count = 0;
+        long upTo = reachable(events, applied);
+        for (ChangeEvent e : events) {
+            if (e.seq <= applied) continue;
+            if (e.seq > upTo) break;
+            replica.apply(e);
+            count++;
+        }
+
+        if (replica.restored || replica.rewrite) {
+            follower.rewrite(replica.lines());
+        } else {
+            for (String line : replica.appended) follower.appendIfAbsent(JsonlRepository.parseWorkout(line));
+        }
+        if (upTo > start) saveApplied(upTo);
+
+        if (!events.isEmpty() && events.get(events.size() - 1).seq > upTo) {
+            // an event the leader couldn't record, and no snapshot covers it yet
+            throw new IllegalStateException("Change feed is missing event " + (upTo + 1)
+                    + "; waiting for the leader's next snapshot");
+        }
+        return count;
+    }
+
+    // the last seq reachable from applied without a hole in the events
+    private static long reachable(List<ChangeEvent> events, long applied) {
+        long next = applied + 1;
+        for (ChangeEvent e : events) {
+            if (e.seq < next) continue;
+            if (e.seq != next) break;
+            next++;
+        }
+        return next - 1;
+    }
+
+    private void saveApplied(long seq) throws Exception {
+        Path tmp = stateFile.resolveSibling("replica.seq.tmp");
+        Files.writeString(tmp, Long.toString(seq), StandardCharsets.UTF_8);
+        Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The follower's records while a catch-up is applied. Removed lines are nulled
+    // out so positions in byKey stay valid until the end.
+    private static class Replica {
+        private final List<String> lines;
+        private final Map<String, Integer> byKey = new HashMap<>();
+        final List<String> appended = new ArrayList<>();
+        boolean restored;
+        boolean rewrite; // an existing record changed, so appends alone won't do
+
+        Replica(List<String> lines) {
+            this.lines = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                if (line.isBlank()) continue;
+                byKey.putIfAbsent(ChangeEvent.keyOf(line), this.lines.size());
+                this.lines.add(line);
+            }
+        }
+
+        void apply(ChangeEvent e) {
+            String key = e.key != null ? e.key : keyAtLeaderIndex(e.index);
+            switch (e.op) {
+                case APPEND -> {
+                    // already there when a snapshot or an earlier catch-up included it
+                    if (!byKey.containsKey(ChangeEvent.keyOf(e.record))) add(e.record);
+                }
+                case UPDATE -> {
+                    Integer at = key == null ? null : byKey.get(key);
+                    // already applied: the replacement is there under its own key
+                    if (at == null) at = byKey.get(ChangeEvent.keyOf(e.record));
+                    if (at == null) {
+                        add(e.record);
+                    } else if (!e.record.equals(lines.get(at))) {
+                        byKey.remove(ChangeEvent.keyOf(lines.get(at)), at);
+                        byKey.put(ChangeEvent.keyOf(e.record), at);
+                        lines.set(at, e.record);
+                        rewrite = true;
+                    }
+                }
+                case DELETE -> {
+                    Integer at = key == null ? null : byKey.remove(key);
+                    if (at != null) {
+                        lines.set(at, null);
+                        rewrite = true;
+                    }
+                }
+            }
+        }
+
+        private void add(String record) {
+            byKey.put(ChangeEvent.keyOf(record), lines.size());
+            lines.add(record);
+            appended.add(record);
+        }
+
+        // events from before keys were recorded only carry the leader's line index
+        private String keyAtLeaderIndex(int index) {
+            int live = 0;
+            for (String line : lines) {
+                if (line == null) continue;
+                if (live++ == index) return ChangeEvent.keyOf(line);
+            }
+            return null;
+        }
+
+        List<String> lines() {
+            List<String> out = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                if (line != null) out.add(line);
+            }
+            return out;
+        }
+    }
+}
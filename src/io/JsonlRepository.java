@@ -2,102 +2,680 @@ package io;
 
 import model.Workout;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 public class JsonlRepository implements WorkoutRepository {
     private final Path dataFile;
     private final Path dataDir;
+    private final Path snapshotFile;
+    private final Path hashFile;
+    private final Path checksumFile;
+    private final Path quarantineFile;
+    private RecordIndex index; // built on first indexed query, dropped on rewrite
+    private FileTime indexModified; // the log's mtime when the index last matched it
+    private List<Workout> model; // decoded records, loaded on first readAllWorkouts
+    private long snapshotWatermark = -1;
+    private LongHashSet hashes; // ContentHash of every record, loaded on first write
+    private long hashesWatermark = -1; // log size the set matches
+    // writers are exclusive; queries and reads may run side by side
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final int RANGE_BATCH = 256; // records per read on a date-sorted range scan
 
     public JsonlRepository() {
-        this.dataDir = Path.of("data");
+        this(Path.of("data"));
+    }
+
+    public JsonlRepository(Path dataDir) {
+        this.dataDir = dataDir;
         this.dataFile = dataDir.resolve("workouts.jsonl");
+        this.snapshotFile = dataDir.resolve("workouts.snapshot");
+        this.hashFile = dataDir.resolve("workouts.hashes");
+        this.checksumFile = dataDir.resolve("workouts.crc");
+        this.quarantineFile = dataDir.resolve("workouts.quarantine.jsonl");
         ensureDataDir();
     }
 
+    @Override
+    public Path dataFile() {
+        return dataFile;
+    }
+
     private void ensureDataDir() {
         try {
             Files.createDirectories(dataDir);
         } catch (Exception e) {
-            System.err.println("Warning: couldn't create data/ directory: " + e.getMessage());
+            System.err.println("Warning: couldn't create " + dataDir + " directory: " + e.getMessage());
         }
     }
 
+    // Rejects a workout whose content is already logged (DuplicateWorkoutException).
     @Override
     public void append(Workout w) throws Exception {
-        String jsonLine = w.toJson() + System.lineSeparator();
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                dataFile,
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND)) {
-            bw.write(jsonLine);
+        appendChecked(w, true);
+    }
+
+    @Override
+    public boolean appendIfAbsent(Workout w) throws Exception {
+        return appendChecked(w, false);
+    }
+
+    private boolean appendChecked(Workout w, boolean rejectDuplicate) throws Exception {
+        String json = w.toJson();
+        String jsonLine = json + System.lineSeparator();
+        long hash = ContentHash.of(w);
+        lock.writeLock().lock();
+        try {
+            LongHashSet set = hashes();
+            if (set.contains(hash)) {
+                if (rejectDuplicate) throw new DuplicateWorkoutException(w.date);
+                return false;
+            }
+
+            boolean current = indexIsCurrent();
+            long offset = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+            try (BufferedWriter bw = Files.newBufferedWriter(
+                    dataFile,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                bw.write(jsonLine);
+            }
+            long newSize = Files.size(dataFile);
+            if (current) {
+                byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+                index.addLine(offset, bytes);
+                index.endOffset = newSize;
+                indexModified = modified();
+                if (model != null) model.add(new LazyWorkout(bytes, 0, bytes.length).toWorkout());
+            } else {
+                index = null;
+                model = null;
+            }
+
+            set.add(hash);
+            hashesWatermark = newSize;
+            try {
+                ContentHashFile.appendOne(hashFile, newSize, set.size(), hash);
+            } catch (Exception e) {
+                // it gets rebuilt from the log next time
+                System.err.println("Warning: couldn't update content hashes: " + e.getMessage());
+            }
+            try {
+                ChecksumFile.appendOne(checksumFile, offset, newSize, ChecksumFile.of(json));
+            } catch (Exception e) {
+                // verify() picks the record up as unchecked and adds it then
+                System.err.println("Warning: couldn't update checksums: " + e.getMessage());
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     @Override
     public List<String> readAllJsonLines() throws Exception {
-        if (!Files.exists(dataFile)) return new ArrayList<>();
-        return Files.readAllLines(dataFile, StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            if (!Files.exists(dataFile)) return new ArrayList<>();
+            return Files.readAllLines(dataFile, StandardCharsets.UTF_8);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Streams the file a line at a time unless the decoded model is already in memory.
+    @Override
+    public void forEachWorkout(Consumer<Workout> visitor) throws Exception {
+        lock.readLock().lock();
+        try {
+            if (model != null && indexIsCurrent()) {
+                for (Workout w : model) visitor.accept(w);
+                return;
+            }
+            if (!Files.exists(dataFile)) return;
+            try (BufferedReader br = Files.newBufferedReader(dataFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) visitor.accept(parseWorkout(line));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Decoded records in line order, shared and read-only: don't modify them.
+    @Override
+    public List<Workout> readAllWorkouts() throws Exception {
+        lockForRead(true);
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(model));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int count() throws Exception {
+        RecordIndex idx = lockForRead(false);
+        try {
+            return idx.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     @Override
-    public void replaceLine(int index, Workout replacement) throws Exception {
-        List<String> lines = readAllJsonLines();
-        if (index < 0 || index >= lines.size()) {
-            throw new IllegalArgumentException("Index out of range: " + index);
+    public List<WorkoutHit> query(WorkoutQuery q) throws Exception {
+        while (true) {
+            RecordIndex idx = lockForRead(false);
+            try {
+                if (idx.size() == 0) return new ArrayList<>();
+                try (FileChannel ch = RecordIndex.open(dataFile)) {
+                    // another process may have replaced the log since the index was checked,
+                    // and its offsets only fit the file it was built from; if so, rebuild
+                    if (ch.size() == idx.endOffset && indexIsCurrent()) return query(idx, ch, q);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private List<WorkoutHit> query(RecordIndex idx, FileChannel ch, WorkoutQuery q) throws Exception {
+        if (q.id == null && q.fromDate != null && !q.fromDate.isBlank() && idx.sortedByDate) {
+            return queryRange(idx, ch, q);
+        }
+
+        // candidate lines: straight from the id / date index when the query has those filters
+        List<Integer> candidates;
+        if (q.id != null) {
+            Integer line = idx.lineForId(q.id);
+            candidates = line == null ? List.of() : List.of(line);
+        } else if (q.hasDateFilter()) {
+            candidates = idx.linesInDateRange(q.fromDate, q.toDate);
+        } else {
+            candidates = null; // every line
+        }
+        int n = candidates == null ? idx.size() : candidates.size();
+
+        List<WorkoutHit> hits = new ArrayList<>();
+        for (int k = 0; k < n && hits.size() < q.limit; k++) {
+            int pos = q.latest ? n - 1 - k : k;
+            int line = candidates == null ? pos : candidates.get(pos);
+            Workout w = q.evaluate(idx.readRecord(ch, line));
+            if (w != null) hits.add(new WorkoutHit(line, w));
+        }
+        if (q.latest) Collections.reverse(hits);
+        return hits;
+    }
+
+    // Date-sorted log: the matching dates are one contiguous run of lines, read in
+    // batches front to back (or back to front for latest) until the limit is hit.
+    private List<WorkoutHit> queryRange(RecordIndex idx, FileChannel ch, WorkoutQuery q) throws Exception {
+        List<WorkoutHit> hits = new ArrayList<>();
+        int[] range = idx.lineRange(q.fromDate, q.toDate);
+        if (range == null) return hits;
+        int lo = range[0];
+        int hi = range[1];
+        while (lo <= hi && hits.size() < q.limit) {
+            int n = Math.min(RANGE_BATCH, hi - lo + 1);
+            int first = q.latest ? hi - n + 1 : lo;
+            LazyWorkout[] batch = idx.readRecords(ch, first, n);
+            for (int k = 0; k < n && hits.size() < q.limit; k++) {
+                int i = q.latest ? n - 1 - k : k;
+                Workout w = q.evaluate(batch[i]);
+                if (w != null) hits.add(new WorkoutHit(first + i, w));
+            }
+            if (q.latest) hi -= n;
+            else lo += n;
         }
+        if (q.latest) Collections.reverse(hits);
+        return hits;
+    }
 
-        Path bak = dataDir.resolve("workouts.jsonl.bak");
+    // Returns a current index (and model, if asked for) with the read lock held; the caller unlocks.
+    private RecordIndex lockForRead(boolean needModel) throws Exception {
+        lock.readLock().lock();
+        boolean current;
         try {
-            Files.copy(dataFile, bak, StandardCopyOption.REPLACE_EXISTING);
+            current = indexIsCurrent() && (!needModel || model != null);
         } catch (Exception e) {
-            System.err.println("Warning: couldn't create backup: " + e.getMessage());
+            lock.readLock().unlock();
+            throw e;
+        }
+        if (current) return index;
+        lock.readLock().unlock();
+
+        lock.writeLock().lock();
+        try {
+            ensureLoaded(needModel);
+            lock.readLock().lock(); // downgrade before releasing the write lock
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock. Prefers the binary snapshot plus a replay of the
+    // JSONL tail after its watermark; falls back to one full scan.
+    private void ensureLoaded(boolean needModel) throws Exception {
+        if (!indexIsCurrent()) {
+            index = null;
+            model = null;
+        }
+        if (index == null) {
+            indexModified = modified(); // taken before reading, so a write during the scan leaves the index stale
+            ModelSnapshot.Loaded snap = ModelSnapshot.load(snapshotFile, dataFile);
+            if (snap != null) {
+                RecordIndex idx = new RecordIndex();
+                List<Workout> m = snap.workouts;
+                for (int i = 0; i < m.size(); i++) {
+                    idx.addEntry(snap.offsets[i], m.get(i).id, m.get(i).date);
+                }
+                idx.scanFrom(dataFile, snap.watermark, json -> m.add(new LazyWorkout(json, 0, json.length).toWorkout()));
+                index = idx;
+                model = m;
+                snapshotWatermark = snap.watermark;
+            }
+        }
+        if (index == null || (needModel && model == null)) {
+            RecordIndex idx = new RecordIndex();
+            List<Workout> m = needModel ? new ArrayList<>() : null;
+            idx.scanFrom(dataFile, 0, m == null ? null : json -> m.add(new LazyWorkout(json, 0, json.length).toWorkout()));
+            index = idx;
+            model = m;
+        }
+    }
+
+    // Write the decoded log to workouts.snapshot so the next start can skip parsing.
+    // Cheap when nothing changed since the last save.
+    public void saveSnapshot() throws Exception {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded(true);
+            if (snapshotWatermark == index.endOffset && Files.exists(snapshotFile)) return;
+            ModelSnapshot.write(snapshotFile, dataFile, index.endOffset, index, model);
+            snapshotWatermark = index.endOffset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The index is trusted only while the file still ends where the index does and
+    // hasn't been touched since; the mtime catches a rewrite to the same length.
+    private boolean indexIsCurrent() throws Exception {
+        if (index == null) return false;
+        long size = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        return index.endOffset == size && Objects.equals(indexModified, modified());
+    }
+
+    private FileTime modified() throws Exception {
+        return Files.exists(dataFile) ? Files.getLastModifiedTime(dataFile) : null;
+    }
+
+    @Override
+    public String replaceLine(int index, Workout replacement) throws Exception {
+        lock.writeLock().lock();
+        try {
+            List<String> lines = readAllJsonLines();
+            if (index < 0 || index >= lines.size()) {
+                throw new IllegalArgumentException("Index out of range: " + index);
+            }
+            LongHashSet set = hashes();
+            String oldLine = lines.get(index);
+            long oldHash = ContentHash.of(parseWorkout(oldLine));
+            long newHash = ContentHash.of(replacement);
+            if (newHash != oldHash && set.contains(newHash)) {
+                throw new DuplicateWorkoutException(replacement.date);
+            }
+
+            int records = this.index.size();
+            int[] crcs = carriedChecksums(lines);
+            lines.set(index, replacement.toJson());
+            crcs[index] = ChecksumFile.of(lines.get(index));
+            writeAll(lines, crcs);
+            forget(set, oldHash, records, lines);
+            set.add(newHash);
+            keepHashes(set);
+            return oldLine;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    @Override
+    public String deleteLine(int index) throws Exception {
+        lock.writeLock().lock();
+        try {
+            List<String> lines = readAllJsonLines();
+            if (index < 0 || index >= lines.size()) {
+                throw new IllegalArgumentException("Index out of range: " + index);
+            }
+            LongHashSet set = hashes();
+            int records = this.index.size();
+            int[] crcs = carriedChecksums(lines);
+            String removed = lines.remove(index);
+            System.arraycopy(crcs, index + 1, crcs, index, crcs.length - index - 1);
+            writeAll(lines, Arrays.copyOf(crcs, crcs.length - 1));
+            forget(set, ContentHash.of(parseWorkout(removed)), records, lines);
+            keepHashes(set);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Takes an edited-away record's hash out of the set, unless a legacy duplicate of
+    // it is still in the log. Only scans when duplicates exist at all, i.e. when the
+    // set was smaller than the record count before the edit.
+    private static void forget(LongHashSet set, long hash, int recordsBefore, List<String> remaining) {
+        if (set.size() < recordsBefore) {
+            for (String line : remaining) {
+                if (ContentHash.of(parseWorkout(line)) == hash) return;
+            }
+        }
+        set.remove(hash);
+    }
+
+    // One-off cleanup: drop every record whose content repeats an earlier one.
+    // When the kept record has no id but a dropped copy does, the id is carried over.
+    // Returns how many records were removed.
+    @Override
+    public int dedupe() throws Exception {
+        lock.writeLock().lock();
+        try {
+            List<String> lines = readAllJsonLines();
+            int[] crcs = carriedChecksums(lines);
+            // kept records stay as they were written; only one that picks up an id is re-serialized
+            Map<Long, Integer> kept = new HashMap<>(); // content hash -> position in out
+            List<String> out = new ArrayList<>();
+            List<Workout> keptWorkouts = new ArrayList<>();
+            int[] outCrcs = new int[lines.size()];
+            int removed = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) continue;
+                Workout w = parseWorkout(line);
+                long hash = ContentHash.of(w);
+                Integer at = kept.get(hash);
+                if (at == null) {
+                    kept.put(hash, out.size());
+                    outCrcs[out.size()] = crcs[i];
+                    out.add(line);
+                    keptWorkouts.add(w);
+                    continue;
+                }
+                removed++;
+                Workout first = keptWorkouts.get(at);
+                if ((first.id == null || first.id.isEmpty()) && w.id != null && !w.id.isEmpty()) {
+                    first.id = w.id;
+                    out.set(at, first.toJson());
+                    outCrcs[at] = ChecksumFile.of(out.get(at));
+                }
+            }
+            if (removed == 0) return 0;
+
+            LongHashSet set = new LongHashSet(kept.size());
+            for (long hash : kept.keySet()) set.add(hash);
+            writeAll(out, Arrays.copyOf(outCrcs, out.size()));
+            keepHashes(set);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Re-clusters the log by date (stable; undated records last) with ExternalSort,
+    // so only one spill run of records is in memory at a time. Afterwards date-range
+    // queries read one contiguous stretch of the file. Returns the number of records
+    // sorted, or 0 when the log was already in date order.
+    @Override
+    public int sortByDate() throws Exception {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded(false);
+            if (index.size() == 0 || index.sortedByDate) return 0;
+            // Every line gets rewritten and checksummed afresh, so a damaged record
+            // would pass for good afterwards; only sort a log that verifies.
+            LogVerifier.Report before = LogVerifier.scan(dataFile, ChecksumFile.load(checksumFile));
+            if (!before.bad.isEmpty()) {
+                throw new IllegalStateException(before.bad.size() + " record(s) in " + dataFile
+                        + " failed verification; run verify and repair before sorting");
+            }
+            long oldSize = index.endOffset;
+            // same records, so the content hashes carry over
+            LongHashSet set = hashes != null && hashesWatermark == oldSize ? hashes : ContentHashFile.load(hashFile, oldSize);
+
+            backup();
+            Path tmp = dataDir.resolve("workouts.jsonl.tmp");
+            int n = ExternalSort.sortByDate(dataFile, tmp, dataDir.resolve("sort-tmp"), ExternalSort.DEFAULT_RUN_LINES);
+            Files.move(tmp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dropDerived();
+            if (set != null) keepHashes(set);
+            // every line was verified above, so the sorted log is the new baseline
+            LogVerifier.Report r = LogVerifier.scan(dataFile, null);
+            ChecksumFile.save(checksumFile, r.bytes, r.crcs, r.records);
+            return n;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Checks every record against its stored CRC32C and for well-formed JSON in the
+    // shape Workout.toJson writes (LogVerifier). A clean log becomes the new checksum
+    // baseline, which is how records nobody has checksummed yet (logs from before
+    // checksums, lines written by other tools) get covered. Nothing is changed when
+    // problems are found; repair() deals with those.
+    @Override
+    public LogVerifier.Report verify() throws Exception {
+        lock.writeLock().lock();
+        try {
+            ChecksumFile.Loaded stored = ChecksumFile.load(checksumFile);
+            LogVerifier.Report r = LogVerifier.scan(dataFile, stored);
+            if (r.ok() && (stored == null || stored.watermark != r.bytes || stored.crcs.length != r.records)) {
+                ChecksumFile.save(checksumFile, r.bytes, r.crcs, r.records);
+            }
+            return r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // verify(), then moves every bad record to workouts.quarantine.jsonl (raw text plus
+    // line and reason, so nothing is lost) and rewrites the log without them. The index,
+    // content hashes and snapshot are rebuilt from the records that are left. Returns
+    // the report of the scan that found the problems.
+    @Override
+    public LogVerifier.Report repair() throws Exception {
+        lock.writeLock().lock();
+        try {
+            ChecksumFile.Loaded stored = ChecksumFile.load(checksumFile);
+            LogVerifier.Report r = LogVerifier.scan(dataFile, stored);
+            if (!r.bad.isEmpty()) {
+                quarantine(r);
+                dropDerived();
+            }
+            // what's left is known good, so it becomes the checksum baseline
+            int[] kept = new int[r.records - r.bad.size()];
+            int k = 0;
+            int b = 0;
+            for (int line = 0; line < r.records; line++) {
+                if (b < r.bad.size() && r.bad.get(b).line == line) b++;
+                else kept[k++] = r.crcs[line];
+            }
+            ChecksumFile.save(checksumFile, Files.exists(dataFile) ? Files.size(dataFile) : 0, kept, k);
+            if (!r.bad.isEmpty()) {
+                ensureLoaded(true);
+                hashes();
+                saveSnapshot();
+            }
+            return r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-        lines.set(index, replacement.toJson());
+    // Caller holds the write lock; r.bad is sorted by line. The quarantine entries are
+    // written before the cleaned log is moved into place, so a crash in between can
+    // at worst quarantine a record twice, never lose it.
+    private void quarantine(LogVerifier.Report r) throws Exception {
+        backup();
+        String now = Instant.now().toString();
+        StringBuilder entries = new StringBuilder();
         Path tmp = dataDir.resolve("workouts.jsonl.tmp");
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                tmp, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING)) {
-            for (String line : lines) {
-                bw.write(line);
-                bw.write(System.lineSeparator());
+        try (FileChannel in = FileChannel.open(dataFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = 0;
+            for (LogVerifier.Problem p : r.bad) {
+                copy(in, out, pos, p.offset - pos);
+                ByteBuffer raw = ByteBuffer.allocate(p.length);
+                while (raw.hasRemaining() && in.read(raw, p.offset + raw.position()) > 0) { }
+                String record = new String(raw.array(), 0, raw.position(), StandardCharsets.UTF_8);
+                entries.append("{\"quarantinedAt\":\"").append(now).append("\",\"line\":").append(p.line)
+                        .append(",\"reason\":").append(jsonString(p.reason))
+                        .append(",\"record\":").append(jsonString(record)).append("}")
+                        .append(System.lineSeparator());
+                pos = p.next;
             }
+            long size = in.size();
+            copy(in, out, pos, size - pos);
+            // keep the log newline-terminated so the next append starts a line of its own
+            if (pos < size) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                in.read(last, size - 1);
+                if (last.get(0) != '\n') out.write(ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        try (BufferedWriter q = Files.newBufferedWriter(quarantineFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            q.write(entries.toString());
         }
         Files.move(tmp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
-    @Override
-    public void deleteLine(int index) throws Exception {
-        List<String> lines = readAllJsonLines();
-        if (index < 0 || index >= lines.size()) {
-            throw new IllegalArgumentException("Index out of range: " + index);
+    private static void copy(FileChannel in, FileChannel out, long from, long count) throws Exception {
+        long done = 0;
+        while (done < count) done += in.transferTo(from + done, count - done, out);
+    }
+
+    static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // Caller holds the write lock. The set is only trusted while it matches the log's size.
+    private LongHashSet hashes() throws Exception {
+        ensureLoaded(false);
+        if (hashes != null && hashesWatermark == index.endOffset) return hashes;
+        LongHashSet set = ContentHashFile.load(hashFile, index.endOffset);
+        if (set == null) {
+            ensureLoaded(true);
+            set = new LongHashSet(model.size());
+            for (Workout w : model) set.add(ContentHash.of(w));
+            ContentHashFile.save(hashFile, index.endOffset, set);
         }
+        hashes = set;
+        hashesWatermark = index.endOffset;
+        return set;
+    }
+
+    // after a rewrite: adopt the updated set and persist it against the new log size
+    private void keepHashes(LongHashSet set) throws Exception {
+        hashes = set;
+        hashesWatermark = Files.exists(dataFile) ? Files.size(dataFile) : 0;
+        ContentHashFile.save(hashFile, hashesWatermark, set);
+    }
 
-        Path bak = dataDir.resolve("workouts.jsonl.bak");
+    // Replace the whole log (restores, maintenance passes). Same backup + atomic move as edits.
+    public void rewrite(List<String> lines) throws Exception {
+        lock.writeLock().lock();
         try {
-            Files.copy(dataFile, bak, StandardCopyOption.REPLACE_EXISTING);
-        } catch (Exception e) {
-            System.err.println("Warning: couldn't create backup: " + e.getMessage());
+            writeAll(lines, null);
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    // Caller holds the write lock. The stored checksums in line order, ready to be
+    // edited in step with the lines: records an edit doesn't touch keep theirs, so a
+    // rewrite never turns a damaged line into a trusted one. Lines past the end of
+    // the list get fresh ones; stored entries past the end of the log stay, so
+    // verify() still reports those records missing.
+    private int[] carriedChecksums(List<String> lines) {
+        ChecksumFile.Loaded stored = ChecksumFile.load(checksumFile);
+        int have = stored == null ? 0 : stored.crcs.length;
+        int[] crcs = stored == null ? new int[lines.size()] : Arrays.copyOf(stored.crcs, Math.max(have, lines.size()));
+        for (int i = have; i < lines.size(); i++) crcs[i] = ChecksumFile.of(lines.get(i));
+        return crcs;
+    }
+
+    // Caller holds the write lock. crcs are the checksums to store for the new log,
+    // or null when every line is new (a restore) and gets a fresh one.
+    private void writeAll(List<String> lines, int[] crcs) throws Exception {
+        backup();
 
         Path tmp = dataDir.resolve("workouts.jsonl.tmp");
         try (BufferedWriter bw = Files.newBufferedWriter(
                 tmp, StandardCharsets.UTF_8,
                 StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING)) {
-            for (int i = 0; i < lines.size(); i++) {
-                if (i == index) continue; // skip the deleted line
-                bw.write(lines.get(i));
+            for (String line : lines) {
+                bw.write(line);
                 bw.write(System.lineSeparator());
             }
         }
         Files.move(tmp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dropDerived();
+        if (crcs == null) ChecksumFile.save(checksumFile, Files.size(dataFile), lines);
+        else ChecksumFile.save(checksumFile, Files.size(dataFile), crcs, crcs.length);
+    }
+
+    private void backup() {
+        if (!Files.exists(dataFile)) return;
+        try {
+            Files.copy(dataFile, dataDir.resolve("workouts.jsonl.bak"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            System.err.println("Warning: couldn't create backup: " + e.getMessage());
+        }
+    }
+
+    // after the file was replaced: nothing cached still lines up with it
+    private void dropDerived() throws Exception {
+        this.index = null;
+        this.model = null;
+        this.hashes = null;
+        this.hashesWatermark = -1;
+        Files.deleteIfExists(snapshotFile);
+        snapshotWatermark = -1;
     }
 
     // ---------- helpers for callers ----------
@@ -119,6 +697,11 @@ public class JsonlRepository implements WorkoutRepository {
         }
     }
 
+    // decode a whole JSON line back into the model (missing fields stay null / 0)
+    public static Workout parseWorkout(String json) {
+        return LazyWorkout.of(json).toWorkout();
+    }
+
     // split {...},{...} inside an array block
     public static List<String> splitRoundObjects(String roundsBlock) {
         List<String> parts = new ArrayList<>();
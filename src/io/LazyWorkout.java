@@ -0,0 +1,298 @@
+package io;
+
+import model.Round;
+import model.Workout;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+// Read-only view of one JSONL record, backed by the raw UTF-8 bytes.
+//
+// A single pre-scan on construction records where each top-level value starts and
+// ends (the rounds array is skipped over, not parsed). Fields are decoded on first
+// access and cached, so a summary that only needs id/date/type never touches the
+// rounds or notes.
+public class LazyWorkout {
+    private static final int ID = 0, DATE = 1, TYPE = 2, DRILLS = 3, ROUNDS_COUNT = 4, ROUNDS = 5, NOTES = 6;
+    private static final byte[][] KEYS = keys("id", "date", "workoutType", "drills", "roundsCount", "rounds", "notes");
+
+    private static final int BELT = 0, SIZE = 1, AGE = 2, DUR = 3, SUBBED = 4, SUB_AGAINST = 5,
+            SUBS = 6, SUB_FOR = 7, OBS = 8;
+    private static final byte[][] ROUND_KEYS = keys("beltLevel", "partnerSize", "partnerAge",
+            "roundDurationMinutes", "timesYouWereSubmitted", "submissionTypesAgainst",
+            "timesYouSubmittedPartner", "submissionTypesFor", "observations");
+
+    private final byte[] buf;
+    private final int[] valStart = new int[KEYS.length];
+    private final int[] valEnd = new int[KEYS.length];
+    private final Object[] cache = new Object[KEYS.length];
+    private final boolean[] decoded = new boolean[KEYS.length];
+
+    public LazyWorkout(byte[] buf, int start, int end) {
+        this.buf = buf;
+        scanObject(buf, start, end, KEYS, valStart, valEnd);
+    }
+
+    public static LazyWorkout of(String json) {
+        byte[] b = json.getBytes(StandardCharsets.UTF_8);
+        return new LazyWorkout(b, 0, b.length);
+    }
+
+    public String id() {
+        return (String) field(ID);
+    }
+
+    public String date() {
+        return (String) field(DATE);
+    }
+
+    public String workoutType() {
+        return (String) field(TYPE);
+    }
+
+    public String drills() {
+        return (String) field(DRILLS);
+    }
+
+    public String notes() {
+        return (String) field(NOTES);
+    }
+
+    public int roundsCount() {
+        return (Integer) field(ROUNDS_COUNT);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Round> rounds() {
+        return (List<Round>) field(ROUNDS);
+    }
+
+    public Workout toWorkout() {
+        return toWorkout(WorkoutQuery.ALL_FIELDS);
+    }
+
+    // materialize only the named fields; the rest stay null (rounds stays empty)
+    public Workout toWorkout(Set<String> fields) {
+        Workout w = new Workout();
+        if (fields.contains("id")) w.id = id();
+        if (fields.contains("date")) w.date = date();
+        if (fields.contains("workoutType")) w.workoutType = workoutType();
+        if (fields.contains("drills")) w.drills = drills();
+        if (fields.contains("roundsCount")) w.roundsCount = roundsCount();
+        if (fields.contains("rounds")) w.rounds = new ArrayList<>(rounds());
+        if (fields.contains("notes")) w.notes = notes();
+        return w;
+    }
+
+    private Object field(int f) {
+        if (!decoded[f]) {
+            cache[f] = decode(f);
+            decoded[f] = true;
+        }
+        return cache[f];
+    }
+
+    private Object decode(int f) {
+        int s = valStart[f];
+        int e = valEnd[f];
+        return switch (f) {
+            case ROUNDS_COUNT -> s < 0 ? 0 : decodeInt(buf, s, e);
+            case ROUNDS -> s < 0 ? Collections.<Round>emptyList() : decodeRounds(s, e);
+            default -> s < 0 ? null : decodeString(buf, s, e);
+        };
+    }
+
+    private List<Round> decodeRounds(int s, int e) {
+        List<Round> rounds = new ArrayList<>();
+        int p = skipWs(buf, s, e);
+        if (p >= e || buf[p] != '[') return rounds;
+        p++;
+        int[] rs = new int[ROUND_KEYS.length];
+        int[] re = new int[ROUND_KEYS.length];
+        while (true) {
+            p = skipWs(buf, p, e);
+            if (p >= e || buf[p] == ']') break;
+            int objEnd = skipValue(buf, p, e);
+            if (objEnd < 0) break;
+            scanObject(buf, p, objEnd, ROUND_KEYS, rs, re);
+            Round r = new Round();
+            r.beltLevel = rs[BELT] < 0 ? null : decodeString(buf, rs[BELT], re[BELT]);
+            r.partnerSize = rs[SIZE] < 0 ? null : decodeString(buf, rs[SIZE], re[SIZE]);
+            r.partnerAge = rs[AGE] < 0 ? 0 : decodeInt(buf, rs[AGE], re[AGE]);
+            r.roundDurationMinutes = rs[DUR] < 0 ? 0 : decodeInt(buf, rs[DUR], re[DUR]);
+            r.timesYouWereSubmitted = rs[SUBBED] < 0 ? 0 : decodeInt(buf, rs[SUBBED], re[SUBBED]);
+            r.submissionTypesAgainst = rs[SUB_AGAINST] < 0 ? null : decodeString(buf, rs[SUB_AGAINST], re[SUB_AGAINST]);
+            r.timesYouSubmittedPartner = rs[SUBS] < 0 ? 0 : decodeInt(buf, rs[SUBS], re[SUBS]);
+            r.submissionTypesFor = rs[SUB_FOR] < 0 ? null : decodeString(buf, rs[SUB_FOR], re[SUB_FOR]);
+            r.observations = rs[OBS] < 0 ? null : decodeString(buf, rs[OBS], re[OBS]);
+            rounds.add(r);
+            p = skipWs(buf, objEnd, e);
+            if (p < e && buf[p] == ',') p++;
+        }
+        return rounds;
+    }
+
+    // ---------- byte-level scanning ----------
+
+    // Records [start, end) of the value for each wanted key; -1 when absent.
+    // Stops quietly at the first malformed token, leaving later fields absent.
+    private static void scanObject(byte[] b, int p, int end, byte[][] keys, int[] vs, int[] ve) {
+        Arrays.fill(vs, -1);
+        Arrays.fill(ve, -1);
+        p = skipWs(b, p, end);
+        if (p >= end || b[p] != '{') return;
+        p++;
+        while (true) {
+            p = skipWs(b, p, end);
+            if (p >= end || b[p] != '"') return;
+            int keyEnd = skipString(b, p, end);
+            if (keyEnd < 0) return;
+            int k = keyIndex(b, p + 1, keyEnd - 1, keys);
+            p = skipWs(b, keyEnd, end);
+            if (p >= end || b[p] != ':') return;
+            p = skipWs(b, p + 1, end);
+            int valueEnd = skipValue(b, p, end);
+            if (valueEnd < 0) return;
+            if (k >= 0 && vs[k] < 0) {
+                vs[k] = p;
+                ve[k] = valueEnd;
+            }
+            p = skipWs(b, valueEnd, end);
+            if (p >= end || b[p] != ',') return;
+            p++;
+        }
+    }
+
+    private static int keyIndex(byte[] b, int s, int e, byte[][] keys) {
+        outer:
+        for (int k = 0; k < keys.length; k++) {
+            byte[] key = keys[k];
+            if (key.length != e - s) continue;
+            for (int i = 0; i < key.length; i++) {
+                if (b[s + i] != key[i]) continue outer;
+            }
+            return k;
+        }
+        return -1;
+    }
+
+    private static int skipWs(byte[] b, int p, int end) {
+        while (p < end && (b[p] == ' ' || b[p] == '\t' || b[p] == '\r' || b[p] == '\n')) p++;
+        return p;
+    }
+
+    // returns the index just past the value, or -1 if it runs off the end
+    private static int skipValue(byte[] b, int p, int end) {
+        if (p >= end) return -1;
+        byte c = b[p];
+        if (c == '"') return skipString(b, p, end);
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (p < end) {
+                byte x = b[p];
+                if (x == '"') {
+                    p = skipString(b, p, end);
+                    if (p < 0) return -1;
+                    continue;
+                }
+                if (x == '{' || x == '[') depth++;
+                else if (x == '}' || x == ']') {
+                    depth--;
+                    if (depth == 0) return p + 1;
+                }
+                p++;
+            }
+            return -1;
+        }
+        // number / true / false / null
+        while (p < end && b[p] != ',' && b[p] != '}' && b[p] != ']'
+                && b[p] != ' ' && b[p] != '\r' && b[p] != '\n') p++;
+        return p;
+    }
+
+    private static int skipString(byte[] b, int p, int end) {
+        p++; // opening quote
+        while (p < end) {
+            if (b[p] == '\\') p += 2;
+            else if (b[p] == '"') return p + 1;
+            else p++;
+        }
+        return -1;
+    }
+
+    static String decodeString(byte[] b, int s, int e) {
+        if (e - s < 2 || b[s] != '"') return null;
+        s++;
+        e--; // drop the quotes
+        boolean plain = true;
+        for (int i = s; i < e; i++) {
+            if (b[i] == '\\') {
+                plain = false;
+                break;
+            }
+        }
+        if (plain) return new String(b, s, e - s, StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder(e - s);
+        int runStart = s;
+        int i = s;
+        while (i < e) {
+            if (b[i] != '\\' || i + 1 >= e) {
+                i++;
+                continue;
+            }
+            sb.append(new String(b, runStart, i - runStart, StandardCharsets.UTF_8));
+            byte x = b[i + 1];
+            i += 2;
+            switch (x) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (i + 4 <= e) {
+                        try {
+                            sb.append((char) Integer.parseInt(new String(b, i, 4, StandardCharsets.US_ASCII), 16));
+                        } catch (NumberFormatException nfe) {
+                            sb.append('?');
+                        }
+                        i += 4;
+                    }
+                }
+                default -> sb.append((char) x); // \" \\ \/
+            }
+            runStart = i;
+        }
+        sb.append(new String(b, runStart, e - runStart, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    // same leniency as JsonlRepository.safeInt: anything unparsable is 0
+    static int decodeInt(byte[] b, int s, int e) {
+        int v = 0;
+        boolean neg = false;
+        int i = s;
+        if (i < e && b[i] == '-') {
+            neg = true;
+            i++;
+        }
+        if (i >= e) return 0;
+        for (; i < e; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) return 0;
+            v = v * 10 + d;
+        }
+        return neg ? -v : v;
+    }
+
+    private static byte[][] keys(String... names) {
+        byte[][] out = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) out[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        return out;
+    }
+}
@@ -0,0 +1,203 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Integrity scan of workouts.jsonl. The file is cut into chunks at line boundaries
+// and the chunks are checked in parallel straight from memory-mapped bytes: each
+// line gets its CRC32C taken and goes through RecordValidator. Line numbers are
+// stitched together afterwards, and the checksums compared with the stored ones.
+public class LogVerifier {
+    static final int MIN_CHUNK = 1 << 20;
+    static final int MAX_CHUNK = 64 << 20;
+
+    public static class Problem {
+        public int line;      // 0-based, as used by replaceLine/deleteLine
+        public long offset;
+        public int length;    // bytes, without the line terminator
+        public String reason;
+        long next;            // offset of the following line
+    }
+
+    public static class Report {
+        public int records;        // lines in the log
+        public int checked;        // lines that had a stored checksum to compare with
+        public int missing;        // stored checksums beyond the end of the log (records lost)
+        public boolean noChecksums;
+        public List<Problem> bad = new ArrayList<>();
+        public long bytes;
+        public long millis;
+        int[] crcs;                // actual checksum of every line
+
+        public boolean ok() {
+            return bad.isEmpty() && missing == 0;
+        }
+    }
+
+    // What one chunk found; lines are numbered from the start of the chunk.
+    private static class Part {
+        int lines;
+        int[] crcs = new int[1024];
+        int[] starts = new int[1024]; // offsets within the chunk
+        int[] lengths = new int[1024];
+        List<Problem> bad = new ArrayList<>();
+        long start;
+        long end;
+        int first; // line number of the chunk's first line
+    }
+
+    static Report scan(Path log, ChecksumFile.Loaded stored) throws Exception {
+        long t0 = System.nanoTime();
+        Report r = new Report();
+        r.noChecksums = stored == null;
+        if (!Files.exists(log)) {
+            r.crcs = new int[0];
+            r.missing = stored == null ? 0 : stored.crcs.length;
+            return r;
+        }
+
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = ch.size();
+            r.bytes = size;
+            long[] bounds = chunks(ch, size);
+            Part[] parts = new Part[bounds.length - 1];
+            IntStream.range(0, parts.length).parallel().forEach(i -> {
+                try {
+                    parts[i] = scanChunk(ch, bounds[i], bounds[i + 1]);
+                } catch (Exception e) {
+                    throw new IllegalStateException("couldn't read " + log + " at " + bounds[i] + ": " + e.getMessage(), e);
+                }
+            });
+
+            int total = 0;
+            for (Part p : parts) total += p.lines;
+            r.records = total;
+            r.crcs = new int[total];
+            int first = 0;
+            for (Part p : parts) {
+                p.first = first;
+                System.arraycopy(p.crcs, 0, r.crcs, first, p.lines);
+                for (Problem pr : p.bad) {
+                    pr.line += first;
+                    r.bad.add(pr);
+                }
+                first += p.lines;
+            }
+            if (stored != null) compare(r, stored, parts);
+        }
+        if (stored != null) r.missing = Math.max(0, stored.crcs.length - r.records);
+
+        r.millis = (System.nanoTime() - t0) / 1_000_000;
+        return r;
+    }
+
+    // chunk start offsets plus the file size, each start just after a '\n'
+    private static long[] chunks(FileChannel ch, long size) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long target = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, size / (cores * 4L)));
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long pos = target;
+        while (pos < size) {
+            // move forward to the next line start
+            long at = -1;
+            long p = pos;
+            while (at < 0 && p < size) {
+                probe.clear();
+                int n = ch.read(probe, p);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        at = p + i + 1;
+                        break;
+                    }
+                }
+                p += n;
+            }
+            if (at < 0 || at >= size) break;
+            starts.add(at);
+            pos = at + target;
+        }
+        long[] out = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) out[i] = starts.get(i);
+        out[out.length - 1] = size;
+        return out;
+    }
+
+    private static Part scanChunk(FileChannel ch, long start, long end) throws Exception {
+        Part p = new Part();
+        p.start = start;
+        p.end = end;
+        // read in place: copying each chunk to the heap would cost up to MAX_CHUNK per thread
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int size = (int) (end - start);
+        int lineStart = 0;
+        for (int i = 0; i <= size; i++) {
+            if (i < size && b.get(i) != '\n') continue;
+            if (i == size && lineStart == size) break; // file ended with a newline
+            int lineEnd = i;
+            if (lineEnd > lineStart && b.get(lineEnd - 1) == '\r') lineEnd--;
+            if (p.lines == p.crcs.length) {
+                p.crcs = Arrays.copyOf(p.crcs, p.lines * 2);
+                p.starts = Arrays.copyOf(p.starts, p.lines * 2);
+                p.lengths = Arrays.copyOf(p.lengths, p.lines * 2);
+            }
+            p.crcs[p.lines] = ChecksumFile.of(b, lineStart, lineEnd);
+            p.starts[p.lines] = lineStart;
+            p.lengths[p.lines] = lineEnd - lineStart;
+            String reason = RecordValidator.check(b, lineStart, lineEnd);
+            if (reason != null) {
+                Problem pr = new Problem();
+                pr.line = p.lines;
+                pr.offset = start + lineStart;
+                pr.length = lineEnd - lineStart;
+                pr.next = start + Math.min(i + 1, size);
+                pr.reason = reason;
+                p.bad.add(pr);
+            }
+            p.lines++;
+            lineStart = i + 1;
+        }
+        return p;
+    }
+
+    // Lines the validator passed but whose bytes no longer match the stored checksum.
+    // A record whose checksum turns up elsewhere in the stored list is intact but has
+    // moved (a line deleted or inserted outside the app), so it isn't flagged: only
+    // bytes that match no record the repository wrote count as damage.
+    private static void compare(Report r, ChecksumFile.Loaded stored, Part[] parts) {
+        r.checked = Math.min(stored.crcs.length, r.records);
+        int[] known = stored.crcs.clone();
+        Arrays.sort(known);
+        boolean[] flagged = new boolean[r.checked];
+        for (Problem pr : r.bad) {
+            if (pr.line < r.checked) flagged[pr.line] = true;
+        }
+        boolean added = false;
+        for (Part p : parts) {
+            for (int i = 0; i < p.lines && p.first + i < r.checked; i++) {
+                int line = p.first + i;
+                if (flagged[line] || stored.crcs[line] == p.crcs[i]) continue;
+                if (Arrays.binarySearch(known, p.crcs[i]) >= 0) continue;
+                Problem pr = new Problem();
+                pr.line = line;
+                pr.offset = p.start + p.starts[i];
+                pr.length = p.lengths[i];
+                pr.next = i + 1 < p.lines ? p.start + p.starts[i + 1] : p.end;
+                pr.reason = "checksum mismatch";
+                r.bad.add(pr);
+                added = true;
+            }
+        }
+        if (added) r.bad.sort((x, y) -> Integer.compare(x.line, y.line));
+    }
+}
@@ -0,0 +1,110 @@
+package io;
+
+import java.util.Arrays;
+
+// Open-addressing set of longs (linear probing, backward-shift delete).
+// 0 marks an empty slot, so the value 0 is stored under a substitute (which then
+// collides with itself; harmless for the hashes this holds).
+public class LongHashSet {
+    private static final long ZERO_SUBSTITUTE = 0x9e3779b97f4a7c15L;
+
+    private long[] table;
+    private int size;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int expected) {
+        int cap = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        table = new long[cap];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long v) {
+        v = key(v);
+        int mask = table.length - 1;
+        for (int i = slot(v, mask); ; i = (i + 1) & mask) {
+            if (table[i] == 0) return false;
+            if (table[i] == v) return true;
+        }
+    }
+
+    // true if it wasn't there yet
+    public boolean add(long v) {
+        v = key(v);
+        if ((size + 1) * 4 > table.length * 3) grow(); // keep load <= 0.75
+        int mask = table.length - 1;
+        for (int i = slot(v, mask); ; i = (i + 1) & mask) {
+            if (table[i] == 0) {
+                table[i] = v;
+                size++;
+                return true;
+            }
+            if (table[i] == v) return false;
+        }
+    }
+
+    public boolean remove(long v) {
+        v = key(v);
+        int mask = table.length - 1;
+        int i = slot(v, mask);
+        while (true) {
+            if (table[i] == 0) return false;
+            if (table[i] == v) break;
+            i = (i + 1) & mask;
+        }
+        // shift later members of the probe run back so lookups never stop early
+        int hole = i;
+        for (int j = (hole + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = slot(table[j], mask);
+            boolean movable = (hole <= j) ? (home <= hole || home > j) : (home <= hole && home > j);
+            if (movable) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = 0;
+        size--;
+        return true;
+    }
+
+    public long[] toArray() {
+        long[] out = new long[size];
+        int n = 0;
+        for (long v : table) {
+            if (v != 0) out[n++] = (v == ZERO_SUBSTITUTE ? 0 : v);
+        }
+        return out;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        size = 0;
+        int mask = table.length - 1;
+        for (long v : old) {
+            if (v == 0) continue;
+            int i = slot(v, mask);
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = v;
+            size++;
+        }
+    }
+
+    private static long key(long v) {
+        return v == 0 ? ZERO_SUBSTITUTE : v;
+    }
+
+    private static int slot(long v, int mask) {
+        return (int) (v ^ (v >>> 32)) & mask;
+    }
+}
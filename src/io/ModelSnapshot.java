@@ -0,0 +1,154 @@
+package io;
+
+import model.Round;
+import model.Workout;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Compact binary image of the decoded log, so startup doesn't have to re-parse JSONL.
+//
+// Layout: magic "BJJS", version, watermark (bytes of workouts.jsonl covered), CRC32
+// of the last <= 4 KB of the log before the watermark, record count, then per
+// record its line offset and fields. Strings are length-prefixed UTF-8 (-1 = null).
+//
+// On load the CRC guards against the log having been rewritten underneath us;
+// anything after the watermark is the tail the caller still has to replay.
+class ModelSnapshot {
+    private static final int MAGIC = 0x424A4A53; // "BJJS"
+    private static final int VERSION = 1;
+    private static final int GUARD_BYTES = 4096;
+
+    static class Loaded {
+        long watermark;
+        long[] offsets;
+        List<Workout> workouts;
+    }
+
+    static void write(Path file, Path log, long watermark, RecordIndex index, List<Workout> workouts) throws Exception {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(watermark);
+            out.writeLong(guardCrc(log, watermark));
+            out.writeInt(workouts.size());
+            for (int i = 0; i < workouts.size(); i++) {
+                Workout w = workouts.get(i);
+                out.writeLong(index.offset(i));
+                writeString(out, w.id);
+                writeString(out, w.date);
+                writeString(out, w.workoutType);
+                writeString(out, w.drills);
+                out.writeInt(w.roundsCount == null ? 0 : w.roundsCount);
+                writeString(out, w.notes);
+                out.writeInt(w.rounds.size());
+                for (Round r : w.rounds) {
+                    writeString(out, r.beltLevel);
+                    writeString(out, r.partnerSize);
+                    out.writeInt(nz(r.partnerAge));
+                    out.writeInt(nz(r.roundDurationMinutes));
+                    out.writeInt(nz(r.timesYouWereSubmitted));
+                    writeString(out, r.submissionTypesAgainst);
+                    out.writeInt(nz(r.timesYouSubmittedPartner));
+                    writeString(out, r.submissionTypesFor);
+                    writeString(out, r.observations);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // null when there is no usable snapshot for this log
+    static Loaded load(Path file, Path log) {
+        if (!Files.exists(file) || !Files.exists(log)) return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            Loaded l = new Loaded();
+            l.watermark = buf.getLong();
+            long crc = buf.getLong();
+            if (Files.size(log) < l.watermark || guardCrc(log, l.watermark) != crc) return null;
+
+            int n = buf.getInt();
+            l.offsets = new long[n];
+            l.workouts = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                l.offsets[i] = buf.getLong();
+                Workout w = new Workout();
+                w.id = readString(buf);
+                w.date = readString(buf);
+                w.workoutType = readString(buf);
+                w.drills = readString(buf);
+                w.roundsCount = buf.getInt();
+                w.notes = readString(buf);
+                int rounds = buf.getInt();
+                for (int k = 0; k < rounds; k++) {
+                    Round r = new Round();
+                    r.beltLevel = readString(buf);
+                    r.partnerSize = readString(buf);
+                    r.partnerAge = buf.getInt();
+                    r.roundDurationMinutes = buf.getInt();
+                    r.timesYouWereSubmitted = buf.getInt();
+                    r.submissionTypesAgainst = readString(buf);
+                    r.timesYouSubmittedPartner = buf.getInt();
+                    r.submissionTypesFor = readString(buf);
+                    r.observations = readString(buf);
+                    w.rounds.add(r);
+                }
+                l.workouts.add(w);
+            }
+            return l;
+        } catch (Exception e) {
+            System.err.println("Warning: ignoring unreadable snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // CRC of the bytes just before the watermark; changes if the covered part of the log was rewritten
+    private static long guardCrc(Path log, long watermark) throws Exception {
+        CRC32 crc = new CRC32();
+        if (watermark <= 0) return crc.getValue();
+        long start = Math.max(0, watermark - GUARD_BYTES);
+        try (InputStream in = Files.newInputStream(log)) {
+            in.skipNBytes(start);
+            crc.update(in.readNBytes((int) (watermark - start)));
+        }
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws Exception {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+}
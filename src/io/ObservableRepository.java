@@ -0,0 +1,118 @@
+package io;
+
+import model.Workout;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Wraps another repository and tells listeners about every successful write,
+// so derived data (rollups, change feed...) can be updated incrementally.
+// Writes are serialized here so listeners see them in the order they happened.
+public class ObservableRepository implements WorkoutRepository {
+    private final WorkoutRepository delegate;
+    private final List<RepositoryListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ObservableRepository(WorkoutRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    public void addListener(RepositoryListener l) {
+        listeners.add(l);
+    }
+
+    public WorkoutRepository delegate() {
+        return delegate;
+    }
+
+    @Override
+    public synchronized void append(Workout w) throws Exception {
+        delegate.append(w);
+        for (RepositoryListener l : listeners) l.onAppend(w);
+    }
+
+    @Override
+    public synchronized boolean appendIfAbsent(Workout w) throws Exception {
+        boolean added = delegate.appendIfAbsent(w);
+        if (added) {
+            for (RepositoryListener l : listeners) l.onAppend(w);
+        }
+        return added;
+    }
+
+    @Override
+    public int dedupe() throws Exception {
+        return maintenance(delegate::dedupe);
+    }
+
+    @Override
+    public int sortByDate() throws Exception {
+        return maintenance(delegate::sortByDate);
+    }
+
+    @Override
+    public LogVerifier.Report verify() throws Exception {
+        return delegate.verify();
+    }
+
+    @Override
+    public LogVerifier.Report repair() throws Exception {
+        return maintenance(delegate::repair);
+    }
+
+    // Runs a whole-log rewrite made directly on the underlying store, then tells
+    // listeners to rebuild.
+    public synchronized <T> T maintenance(Callable<T> op) throws Exception {
+        try {
+            return op.call();
+        } finally {
+            for (RepositoryListener l : listeners) l.onReload();
+        }
+    }
+
+    @Override
+    public Path dataFile() {
+        return delegate.dataFile();
+    }
+
+    @Override
+    public List<String> readAllJsonLines() throws Exception {
+        return delegate.readAllJsonLines();
+    }
+
+    @Override
+    public List<Workout> readAllWorkouts() throws Exception {
+        return delegate.readAllWorkouts();
+    }
+
+    @Override
+    public void forEachWorkout(Consumer<Workout> visitor) throws Exception {
+        delegate.forEachWorkout(visitor);
+    }
+
+    @Override
+    public int count() throws Exception {
+        return delegate.count();
+    }
+
+    @Override
+    public List<WorkoutHit> query(WorkoutQuery q) throws Exception {
+        return delegate.query(q);
+    }
+
+    @Override
+    public synchronized String replaceLine(int index, Workout replacement) throws Exception {
+        String oldLine = delegate.replaceLine(index, replacement);
+        for (RepositoryListener l : listeners) l.onReplace(index, oldLine, replacement);
+        return oldLine;
+    }
+
+    @Override
+    public synchronized String deleteLine(int index) throws Exception {
+        String oldLine = delegate.deleteLine(index);
+        for (RepositoryListener l : listeners) l.onDelete(index, oldLine);
+        return oldLine;
+    }
+}
@@ -0,0 +1,316 @@
+package io;
+
+import model.Workout;
+import stats.GroupBy;
+import stats.TrainingTotals;
+
+import java.io.BufferedWriter;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// One log per athlete under <root>/<athleteId>/workouts.jsonl, plus a small catalog
+// (<root>/catalog.jsonl) with each athlete's workout count and latest date.
+//
+// Per-athlete actions only ever touch that athlete's files. Gym-wide aggregates
+// query every partition on a small pool of threads and merge the results. Several
+// processes may share the root: catalog saves re-read the file under a lock and
+// only replace the entries this process changed.
+//
+// Writes only mark the athlete's catalog entry as changed; flushCatalog() saves
+// them all in one go. catalog() flushes first, and the app flushes on a timer and
+// on quit. An entry left stale by a process that died before flushing is put
+// right the next time that athlete is written.
+public class PartitionedRepository {
+    private static final Pattern ATHLETE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    public static class CatalogEntry {
+        public final String athleteId;
+        public int workouts;
+        public String lastDate;
+
+        CatalogEntry(String athleteId) {
+            this.athleteId = athleteId;
+        }
+
+        String toJson() {
+            return "{\"athleteId\":\"" + athleteId + "\","
+                    + "\"workouts\":" + workouts + ","
+                    + "\"lastDate\":\"" + (lastDate == null ? "" : lastDate) + "\"}";
+        }
+    }
+
+    private final Path root;
+    private final Path catalogFile;
+    private final Map<String, CatalogEntry> catalog = new TreeMap<>();
+    private final Map<String, ObservableRepository> partitions = new ConcurrentHashMap<>();
+    private final Set<String> dirty = new TreeSet<>(); // entries changed since the last flush
+
+    public PartitionedRepository(Path root) throws Exception {
+        this.root = root;
+        this.catalogFile = root.resolve("catalog.jsonl");
+        Files.createDirectories(root);
+        loadCatalog();
+    }
+
+    public Path partitionDir(String athleteId) {
+        return root.resolve(checkId(athleteId));
+    }
+
+    // The athlete's own repository; created on first use.
+    public ObservableRepository forAthlete(String athleteId) throws Exception {
+        checkId(athleteId);
+        ObservableRepository repo = partitions.get(athleteId);
+        if (repo != null) return repo;
+        synchronized (this) {
+            repo = partitions.get(athleteId);
+            if (repo != null) return repo;
+            repo = new ObservableRepository(WorkoutRepository.open(partitionDir(athleteId)));
+            repo.addListener(new CatalogUpdater(athleteId));
+            if (!catalog.containsKey(athleteId)) {
+                CatalogEntry e = new CatalogEntry(athleteId);
+                catalog.put(athleteId, e);
+                saveCatalog(List.of(e));
+            }
+            partitions.put(athleteId, repo);
+            return repo;
+        }
+    }
+
+    // Re-read so athletes and counts saved by other processes show up too.
+    public synchronized List<CatalogEntry> catalog() throws Exception {
+        flushCatalog();
+        adopt(readCatalog());
+        return new ArrayList<>(catalog.values());
+    }
+
+    // Saves every catalog entry changed since the last flush, in one locked rewrite.
+    // The counts are taken from the partitions now, so they also absorb writes
+    // another process made to the same athletes.
+    public synchronized void flushCatalog() throws Exception {
+        if (dirty.isEmpty()) return;
+        List<CatalogEntry> changed = new ArrayList<>();
+        for (String id : dirty) {
+            CatalogEntry e = catalog.computeIfAbsent(id, CatalogEntry::new);
+            e.workouts = partitions.get(id).count();
+            changed.add(e);
+        }
+        saveCatalog(changed);
+        dirty.clear();
+    }
+
+    // Gym-wide totals grouped by key, across every athlete partition. Catalog counts
+    // can lag behind other processes, so every partition is queried, not just the
+    // ones the catalog says have workouts. The partitions are read on a pool of at
+    // most one thread per core, and the per-partition maps are merged.
+    public Map<String, TrainingTotals> aggregate(WorkoutQuery q, GroupBy.Key key) throws Exception {
+        List<String> ids = partitionIds();
+        if (ids.isEmpty()) return new TreeMap<>();
+
+        int threads = Math.min(ids.size(), Runtime.getRuntime().availableProcessors());
+        AtomicInteger n = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "partition-reader-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, TrainingTotals> out = new TreeMap<>();
+        try {
+            List<Future<Map<String, TrainingTotals>>> parts = new ArrayList<>();
+            for (String id : ids) {
+                parts.add(pool.submit(() -> GroupBy.aggregate(forReading(id).query(q), key)));
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                Map<String, TrainingTotals> part;
+                try {
+                    part = parts.get(i).get();
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    throw new Exception("Athlete " + ids.get(i) + ": " + cause.getMessage(), cause);
+                }
+                for (Map.Entry<String, TrainingTotals> e : part.entrySet()) {
+                    out.computeIfAbsent(e.getKey(), k -> new TrainingTotals()).merge(e.getValue());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return out;
+    }
+
+    // The open partition when this process already uses it; otherwise a throwaway
+    // repository, so a gym-wide query doesn't keep every athlete's log in memory.
+    private WorkoutRepository forReading(String athleteId) throws Exception {
+        ObservableRepository open = partitions.get(athleteId);
+        return open != null ? open : WorkoutRepository.open(partitionDir(athleteId));
+    }
+
+    public Map<String, TrainingTotals> gymStatsByBelt() throws Exception {
+        return aggregate(WorkoutQuery.all().fields("workoutType", "rounds"), GroupBy.Key.BELT);
+    }
+
+    // ---------- catalog ----------
+
+    private void loadCatalog() throws Exception {
+        catalog.putAll(readCatalog());
+        // partitions created by another process since the catalog was last written,
+        // or the whole catalog when there is none yet
+        List<CatalogEntry> added = new ArrayList<>();
+        for (String id : partitionIds()) {
+            if (catalog.containsKey(id)) continue;
+            CatalogEntry e = new CatalogEntry(id);
+            for (WorkoutHit h : WorkoutRepository.open(root.resolve(id)).query(WorkoutQuery.all().fields("date"))) {
+                e.workouts++;
+                e.lastDate = later(e.lastDate, h.workout.date);
+            }
+            catalog.put(id, e);
+            added.add(e);
+        }
+        if (!added.isEmpty() || !Files.exists(catalogFile)) saveCatalog(added);
+    }
+
+    // every athlete directory under the root
+    private List<String> partitionIds() throws Exception {
+        List<String> ids = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path dir : ds) {
+                String id = dir.getFileName().toString();
+                if (ATHLETE_ID.matcher(id).matches()) ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private Map<String, CatalogEntry> readCatalog() throws Exception {
+        Map<String, CatalogEntry> out = new TreeMap<>();
+        if (!Files.exists(catalogFile)) return out;
+        for (String line : Files.readAllLines(catalogFile, StandardCharsets.UTF_8)) {
+            String id = JsonlRepository.extract(line, "\"athleteId\":\"", "\"");
+            if (id == null || !ATHLETE_ID.matcher(id).matches()) continue;
+            CatalogEntry e = new CatalogEntry(id);
+            e.workouts = JsonlRepository.safeInt(JsonlRepository.extract(line, "\"workouts\":", ","));
+            String last = JsonlRepository.extract(line, "\"lastDate\":\"", "\"");
+            e.lastDate = (last == null || last.isEmpty()) ? null : last;
+            out.put(id, e);
+        }
+        return out;
+    }
+
+    // Caller holds this object's monitor. Merges the changed entries into the catalog
+    // file as it is now (another process may have added athletes since we read it)
+    // and picks up everyone else's entries in memory too.
+    private void saveCatalog(List<CatalogEntry> changed) throws Exception {
+        try (FileChannel lockChannel = FileChannel.open(root.resolve("catalog.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                Map<String, CatalogEntry> merged = readCatalog();
+                for (String id : catalog.keySet()) merged.putIfAbsent(id, catalog.get(id));
+                for (CatalogEntry e : changed) {
+                    CatalogEntry onDisk = merged.put(e.athleteId, e);
+                    if (onDisk != null && onDisk != e) e.lastDate = later(e.lastDate, onDisk.lastDate);
+                }
+
+                Path tmp = root.resolve("catalog.jsonl.tmp");
+                try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    for (CatalogEntry e : merged.values()) {
+                        bw.write(e.toJson());
+                        bw.write(System.lineSeparator());
+                    }
+                }
+                Files.move(tmp, catalogFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                adopt(merged);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // Takes the file's view of each entry, keeping the objects already handed out.
+    // Entries waiting for a flush keep their own values apart from a later lastDate.
+    private void adopt(Map<String, CatalogEntry> entries) {
+        for (CatalogEntry e : entries.values()) {
+            CatalogEntry mine = catalog.get(e.athleteId);
+            if (mine == null) {
+                catalog.put(e.athleteId, e);
+            } else if (dirty.contains(e.athleteId)) {
+                mine.lastDate = later(mine.lastDate, e.lastDate);
+            } else if (mine != e) {
+                mine.workouts = e.workouts;
+                mine.lastDate = e.lastDate;
+            }
+        }
+    }
+
+    private static String later(String a, String b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static String checkId(String athleteId) {
+        if (athleteId == null || !ATHLETE_ID.matcher(athleteId).matches()) {
+            throw new IllegalArgumentException("Invalid athlete id: " + athleteId);
+        }
+        return athleteId;
+    }
+
+    // keeps the catalog entry in step with writes to one partition; nothing is
+    // saved until the next flushCatalog()
+    private class CatalogUpdater implements RepositoryListener {
+        private final String athleteId;
+
+        CatalogUpdater(String athleteId) {
+            this.athleteId = athleteId;
+        }
+
+        @Override
+        public void onAppend(Workout w) {
+            update(w.date);
+        }
+
+        @Override
+        public void onReplace(int index, String oldLine, Workout replacement) {
+            update(replacement.date);
+        }
+
+        // lastDate is "latest seen": a delete doesn't walk it back
+        @Override
+        public void onDelete(int index, String oldLine) {
+            update(null);
+        }
+
+        @Override
+        public void onReload() {
+            update(null);
+        }
+
+        private void update(String date) {
+            synchronized (PartitionedRepository.this) {
+                CatalogEntry e = catalog.computeIfAbsent(athleteId, CatalogEntry::new);
+                e.lastDate = later(e.lastDate, date);
+                dirty.add(athleteId);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package io;
+
+import model.Round;
+import model.Workout;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Binary encoding of one workout for workouts.bin.
+//
+// File: magic "BJJB", one version byte, then records. Each record is a varint
+// byte length followed by its fields in a fixed order; each round inside it is
+// length-prefixed the same way. Ints are zigzag varints, strings are a varint
+// (UTF-8 length + 1, 0 = null) followed by the bytes.
+//
+// New fields only ever go on the end of a record or round and bump VERSION.
+// Readers stop at the length boundary, so an older record just leaves the new
+// fields at their defaults and bytes a reader doesn't know about are skipped.
+class RecordCodec {
+    static final int MAGIC = 0x424A4A42; // "BJJB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 5;
+
+    static byte[] header() {
+        return new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION};
+    }
+
+    // the file's version, or -1 when it doesn't start with our magic
+    static int readHeader(byte[] b) {
+        if (b.length < HEADER_BYTES) return -1;
+        int magic = ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+        return magic == MAGIC ? b[4] & 0xFF : -1;
+    }
+
+    // length prefix included, ready to append
+    static byte[] encode(Workout w) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(128);
+        writeString(body, w.id);
+        writeString(body, w.date);
+        writeString(body, w.workoutType);
+        writeString(body, w.drills);
+        writeInt(body, w.roundsCount == null ? 0 : w.roundsCount);
+        writeString(body, w.notes);
+        writeVarint(body, w.rounds.size());
+        ByteArrayOutputStream round = new ByteArrayOutputStream(64);
+        for (Round r : w.rounds) {
+            round.reset();
+            writeString(round, r.beltLevel);
+            writeString(round, r.partnerSize);
+            writeInt(round, nz(r.partnerAge));
+            writeInt(round, nz(r.roundDurationMinutes));
+            writeInt(round, nz(r.timesYouWereSubmitted));
+            writeString(round, r.submissionTypesAgainst);
+            writeInt(round, nz(r.timesYouSubmittedPartner));
+            writeString(round, r.submissionTypesFor);
+            writeString(round, r.observations);
+            writeVarint(body, round.size());
+            body.write(round.toByteArray(), 0, round.size());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 5);
+        writeVarint(out, body.size());
+        out.write(body.toByteArray(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    // Cursor over a whole file (or any byte range of records).
+    static class Reader {
+        private final ByteBuffer b;
+        private final int limit;
+        private int p;
+        private byte[] scratch; // string bytes copied out of a buffer without an array
+
+        Reader(byte[] b, int start) {
+            this(ByteBuffer.wrap(b), start);
+        }
+
+        // Reads b[start, b.limit()) with absolute gets only, so readers on different
+        // slices of one mapped file can run side by side.
+        Reader(ByteBuffer b, int start) {
+            this.b = b;
+            this.limit = b.limit();
+            this.p = start;
+        }
+
+        int position() {
+            return p;
+        }
+
+        boolean hasNext() {
+            return p < limit;
+        }
+
+        // null when the record at the cursor can't be read; the cursor doesn't move
+        Workout next() {
+            int start = p;
+            try {
+                int len = readVarint();
+                int end = p + len;
+                if (len < 0 || end > limit) {
+                    p = start;
+                    return null;
+                }
+                Workout w = decode(end);
+                p = end;
+                return w;
+            } catch (IndexOutOfBoundsException e) {
+                p = start;
+                return null;
+            }
+        }
+
+        void seek(int pos) {
+            p = pos;
+        }
+
+        // End of the record at the cursor going by its length prefix, or -1 when it runs
+        // past the end of the data, the way an append cut short (or still being written)
+        // does. A record that fails to decode inside its own length is damage instead.
+        int frameEnd() {
+            int start = p;
+            try {
+                int len = readVarint();
+                return len < 0 || p + len > limit ? -1 : p + len;
+            } catch (IndexOutOfBoundsException e) {
+                return -1; // the length prefix itself is cut off
+            } finally {
+                p = start;
+            }
+        }
+
+        private Workout decode(int end) {
+            Workout w = new Workout();
+            w.id = readString(end);
+            w.date = readString(end);
+            w.workoutType = readString(end);
+            w.drills = readString(end);
+            w.roundsCount = readInt(end);
+            w.notes = readString(end);
+            int rounds = p < end ? readVarint() : 0;
+            for (int i = 0; i < rounds; i++) {
+                int len = readVarint();
+                int roundEnd = p + len;
+                Round r = new Round();
+                r.beltLevel = readString(roundEnd);
+                r.partnerSize = readString(roundEnd);
+                r.partnerAge = readInt(roundEnd);
+                r.roundDurationMinutes = readInt(roundEnd);
+                r.timesYouWereSubmitted = readInt(roundEnd);
+                r.submissionTypesAgainst = readString(roundEnd);
+                r.timesYouSubmittedPartner = readInt(roundEnd);
+                r.submissionTypesFor = readString(roundEnd);
+                r.observations = readString(roundEnd);
+                w.rounds.add(r);
+                p = roundEnd;
+            }
+            return w;
+        }
+
+        private int readVarint() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte x = b.get(p++);
+                v |= (x & 0x7F) << shift;
+                if (x >= 0) return v;
+            }
+            throw new ArrayIndexOutOfBoundsException("varint too long");
+        }
+
+        // fields past the end of an older record read as their defaults
+        private int readInt(int end) {
+            if (p >= end) return 0;
+            int z = readVarint();
+            return (z >>> 1) ^ -(z & 1);
+        }
+
+        private String readString(int end) {
+            if (p >= end) return null;
+            int len = readVarint() - 1;
+            if (len < 0) return null;
+            if (p + len > end) throw new IndexOutOfBoundsException("string runs past the end of its record");
+            String s;
+            if (b.hasArray()) {
+                s = new String(b.array(), b.arrayOffset() + p, len, StandardCharsets.UTF_8);
+            } else {
+                if (scratch == null || scratch.length < len) scratch = new byte[Math.max(256, len)];
+                b.get(p, scratch, 0, len);
+                s = new String(scratch, 0, len, StandardCharsets.UTF_8);
+            }
+            p += len;
+            return s;
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    static void writeInt(ByteArrayOutputStream out, int v) {
+        writeVarint(out, (v << 1) ^ (v >> 31));
+    }
+
+    static void writeString(ByteArrayOutputStream out, String s) {
+        if (s == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+}
@@ -0,0 +1,158 @@
+package io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// In-memory index over a JSONL file: byte offset of every line, plus id -> line
+// and date -> lines. Built with one streaming pass (or restored from a
+// ModelSnapshot and topped up from the tail); appends extend it, rewrites throw it away.
+class RecordIndex {
+    private long[] offsets = new long[64];
+    private int size = 0;
+    private final Map<String, Integer> byId = new HashMap<>();
+    private final TreeMap<String, List<Integer>> byDate = new TreeMap<>();
+    long endOffset = 0;
+    // true while every line's date is >= the one before (ExternalSort.DATE_ORDER)
+    boolean sortedByDate = true;
+    private String lastDate;
+
+    static RecordIndex build(Path file) throws Exception {
+        RecordIndex idx = new RecordIndex();
+        idx.scanFrom(file, 0, null);
+        return idx;
+    }
+
+    // Index every line from byte offset start to the end of the file, handing each
+    // line's bytes to perLine as well when it isn't null.
+    void scanFrom(Path file, long start, Consumer<byte[]> perLine) throws Exception {
+        endOffset = start;
+        if (!Files.exists(file)) return;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            in.skipNBytes(start);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long pos = start;
+            long lineStart = start;
+            int b;
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b == '\n') {
+                    byte[] json = line.toByteArray();
+                    addLine(lineStart, json);
+                    if (perLine != null) perLine.accept(json);
+                    line.reset();
+                    lineStart = pos;
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            if (line.size() > 0) {
+                byte[] json = line.toByteArray();
+                addLine(lineStart, json);
+                if (perLine != null) perLine.accept(json);
+            }
+            endOffset = pos;
+        }
+    }
+
+    void addLine(long offset, byte[] json) {
+        LazyWorkout lw = new LazyWorkout(json, 0, json.length);
+        addEntry(offset, lw.id(), lw.date());
+    }
+
+    void addEntry(long offset, String id, String date) {
+        if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+        int line = size++;
+        offsets[line] = offset;
+        if (line > 0 && ExternalSort.DATE_ORDER.compare(lastDate, date) > 0) sortedByDate = false;
+        lastDate = date;
+        if (id != null && !id.isEmpty()) byId.putIfAbsent(id, line);
+        if (date != null) byDate.computeIfAbsent(date, k -> new ArrayList<>()).add(line);
+    }
+
+    long offset(int line) {
+        return offsets[line];
+    }
+
+    int size() {
+        return size;
+    }
+
+    Integer lineForId(String id) {
+        return byId.get(id);
+    }
+
+    // line numbers with from <= date <= to, in file order
+    List<Integer> linesInDateRange(String from, String to) {
+        Map<String, List<Integer>> range;
+        if (from == null && to == null) range = byDate;
+        else if (from == null) range = byDate.headMap(to, true);
+        else if (to == null) range = byDate.tailMap(from, true);
+        else if (from.compareTo(to) > 0) return new ArrayList<>();
+        else range = byDate.subMap(from, true, to, true);
+        List<Integer> out = new ArrayList<>();
+        for (List<Integer> l : range.values()) out.addAll(l);
+        out.sort(null);
+        return out;
+    }
+
+    // For a date-sorted log: the first and last line with from <= date <= to (to may be
+    // null), or null if there are none. Those lines are contiguous in such a log.
+    int[] lineRange(String from, String to) {
+        if (to != null && from.compareTo(to) > 0) return null;
+        NavigableMap<String, List<Integer>> range = to == null
+                ? byDate.tailMap(from, true)
+                : byDate.subMap(from, true, to, true);
+        if (range.isEmpty()) return null;
+        List<Integer> first = range.firstEntry().getValue();
+        List<Integer> last = range.lastEntry().getValue();
+        return new int[]{first.get(0), last.get(last.size() - 1)};
+    }
+
+    // Lines [from, from + count) with one read of their contiguous bytes.
+    LazyWorkout[] readRecords(FileChannel ch, int from, int count) throws Exception {
+        long start = offsets[from];
+        int endLine = from + count;
+        long end = endLine < size ? offsets[endLine] : endOffset;
+        ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, start + buf.position()) < 0) break;
+        }
+        byte[] b = buf.array();
+        LazyWorkout[] out = new LazyWorkout[count];
+        for (int i = 0; i < count; i++) {
+            int s = (int) (offsets[from + i] - start);
+            int e = (int) ((from + i + 1 < size ? offsets[from + i + 1] : endOffset) - start);
+            out[i] = new LazyWorkout(b, s, Math.min(e, buf.position()));
+        }
+        return out;
+    }
+
+    // read a single record starting at the indexed offset, without decoding it
+    LazyWorkout readRecord(FileChannel ch, int line) throws Exception {
+        long start = offsets[line];
+        long end = (line + 1 < size) ? offsets[line + 1] : endOffset;
+        ByteBuffer buf = ByteBuffer.allocate((int) (end - start));
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, start + buf.position()) < 0) break;
+        }
+        return new LazyWorkout(buf.array(), 0, buf.position());
+    }
+
+    static FileChannel open(Path file) throws Exception {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+}
@@ -0,0 +1,325 @@
+package io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+// Strict check of one JSONL record, straight from the file's bytes: well-formed JSON
+// (the lenient extract()-style parsing elsewhere happily reads half a record), then
+// the shape Workout.toJson writes. Unknown fields are allowed so older or newer
+// records aren't flagged.
+//
+// Nothing is decoded unless it has to be: values are only checked for their kind,
+// field names are compared as bytes, so a verify pass doesn't allocate per field.
+// The bytes are read in place (absolute gets), so a memory-mapped log is never
+// copied onto the heap.
+class RecordValidator {
+    private static final int OBJECT = 0, ARRAY = 1, STRING = 2, INT = 3, NUMBER = 4, LITERAL = 5;
+
+    private static final byte[][] WORKOUT_FIELDS = names("id", "date", "workoutType", "drills", "notes",
+            "roundsCount", "rounds");
+    private static final int DATE = 1, ROUNDS_COUNT = 5, ROUNDS = 6;
+
+    private static final byte[][] ROUND_FIELDS = names("beltLevel", "partnerSize", "submissionTypesAgainst",
+            "submissionTypesFor", "observations",
+            "partnerAge", "roundDurationMinutes", "timesYouWereSubmitted", "timesYouSubmittedPartner");
+    private static final int FIRST_ROUND_INT = 5;
+
+    private final ByteBuffer b;
+    private final int start;
+    private int pos;
+    private final int end;
+    private boolean intFits; // whether the last INT read fits in an int
+
+    private RecordValidator(ByteBuffer b, int start, int end) {
+        this.b = b;
+        this.start = start;
+        this.pos = start;
+        this.end = end;
+    }
+
+    // null when the record is fine, otherwise why it isn't
+    static String check(ByteBuffer b, int start, int end) {
+        RecordValidator v = new RecordValidator(b, start, end);
+        try {
+            v.skipSpace();
+            if (v.pos == end) return null; // every reader skips blank lines
+            if (b.get(v.pos) != '{') return "record is not a JSON object";
+            String reason = v.workout();
+            if (reason != null) return reason;
+            v.skipSpace();
+            if (v.pos != end) throw v.error("trailing data");
+            return null;
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    private String workout() {
+        int seen = 0;
+        String problem = null; // keep parsing: broken JSON is the better reason to give
+        pos++;
+        if (!emptyAfter('}')) {
+            do {
+                int field = key(WORKOUT_FIELDS);
+                if (field >= 0 && (seen & (1 << field)) != 0) throw error("duplicate field " + name(WORKOUT_FIELDS, field));
+                if (field >= 0) seen |= 1 << field;
+                skipSpace();
+                int valueStart = pos;
+                if (field == ROUNDS && pos < end && b.get(pos) == '[') {
+                    String r = rounds();
+                    if (problem == null) problem = r;
+                    continue;
+                }
+                int kind = value(1);
+                if (problem != null || field < 0) continue;
+                if (field == ROUNDS) problem = "rounds is not an array";
+                else if (field == ROUNDS_COUNT) {
+                    if (kind != INT || !intFits) problem = "roundsCount is not an integer";
+                } else if (kind != STRING) {
+                    problem = name(WORKOUT_FIELDS, field) + " is not a string";
+                } else if (field == DATE) {
+                    problem = date(valueStart + 1, pos - 1);
+                }
+            } while (next('}'));
+        }
+        if (problem == null && (seen & (1 << DATE)) == 0) problem = "missing date";
+        return problem;
+    }
+
+    private String rounds() {
+        String problem = null;
+        int n = 0;
+        pos++;
+        if (emptyAfter(']')) return null;
+        do {
+            n++;
+            skipSpace();
+            if (pos == end || b.get(pos) != '{') {
+                value(2);
+                if (problem == null) problem = "round " + n + " is not an object";
+                continue;
+            }
+            pos++;
+            if (emptyAfter('}')) continue;
+            do {
+                int field = key(ROUND_FIELDS);
+                int kind = value(3);
+                if (problem != null || field < 0) continue;
+                if (field >= FIRST_ROUND_INT ? kind != INT || !intFits : kind != STRING) {
+                    problem = "round " + n + " " + name(ROUND_FIELDS, field)
+                            + (field >= FIRST_ROUND_INT ? " is not an integer" : " is not a string");
+                }
+            } while (next('}'));
+        } while (next(']'));
+        return problem;
+    }
+
+    // yyyy-MM-dd between the quotes, and a real day
+    private String date(int s, int e) {
+        boolean shape = e - s == 10 && b.get(s + 4) == '-' && b.get(s + 7) == '-';
+        for (int i = s; shape && i < e; i++) {
+            if (i != s + 4 && i != s + 7 && (b.get(i) < '0' || b.get(i) > '9')) shape = false;
+        }
+        if (shape) {
+            try {
+                LocalDate.of(digits(s, 4), digits(s + 5, 2), digits(s + 8, 2));
+                return null;
+            } catch (DateTimeException ignored) {
+                // falls through to the message
+            }
+        }
+        return "bad date \"" + text(s, e, StandardCharsets.UTF_8) + "\"";
+    }
+
+    private int digits(int at, int n) {
+        int v = 0;
+        for (int i = at; i < at + n; i++) v = v * 10 + (b.get(i) - '0');
+        return v;
+    }
+
+    // ---------- parser ----------
+
+    private IllegalStateException error(String what) {
+        return new IllegalStateException(what + " at column " + (pos - start + 1));
+    }
+
+    private void skipSpace() {
+        while (pos < end) {
+            byte c = b.get(pos);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') return;
+            pos++;
+        }
+    }
+
+    // after an opening bracket: true (and consumed) when it is closed straight away
+    private boolean emptyAfter(char close) {
+        skipSpace();
+        if (pos < end && b.get(pos) == close) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    // after a member: true for ',' (another one follows), false for the closing bracket
+    private boolean next(char close) {
+        skipSpace();
+        if (pos == end) throw error(close == '}' ? "unterminated object" : "unterminated array");
+        if (b.get(pos) == ',') {
+            pos++;
+            return true;
+        }
+        if (b.get(pos) != close) throw error("expected ',' or '" + close + "'");
+        pos++;
+        return false;
+    }
+
+    // reads `"name":` and returns the index of a known name, -1 for any other
+    private int key(byte[][] known) {
+        skipSpace();
+        if (pos == end || b.get(pos) != '"') throw error("expected field name");
+        int s = pos + 1;
+        string();
+        int e = pos - 1;
+        skipSpace();
+        if (pos == end || b.get(pos) != ':') throw error("expected ':'");
+        pos++;
+        if (known == null) return -1;
+        for (int i = 0; i < known.length; i++) {
+            if (known[i].length == e - s && bytesEqual(s, known[i])) return i;
+        }
+        return -1;
+    }
+
+    private int value(int depth) {
+        if (depth > 32) throw error("nested too deeply");
+        skipSpace();
+        if (pos == end) throw error("unexpected end of record");
+        switch (b.get(pos)) {
+            case '{' -> {
+                pos++;
+                if (!emptyAfter('}')) {
+                    do {
+                        key(null);
+                        value(depth + 1);
+                    } while (next('}'));
+                }
+                return OBJECT;
+            }
+            case '[' -> {
+                pos++;
+                if (!emptyAfter(']')) {
+                    do {
+                        value(depth + 1);
+                    } while (next(']'));
+                }
+                return ARRAY;
+            }
+            case '"' -> {
+                string();
+                return STRING;
+            }
+            case 't' -> literal("true");
+            case 'f' -> literal("false");
+            case 'n' -> literal("null");
+            default -> {
+                return number();
+            }
+        }
+        return LITERAL;
+    }
+
+    private void string() {
+        pos++;
+        while (pos < end) {
+            byte c = b.get(pos);
+            if (c == '"') {
+                pos++;
+                return;
+            }
+            if ((c & 0xff) < 0x20) throw error("control character in string");
+            if (c == '\\') {
+                if (++pos == end) break;
+                switch (b.get(pos)) {
+                    case '"', '\\', '/', 'b', 'f', 'n', 'r', 't' -> { }
+                    case 'u' -> {
+                        for (int i = 0; i < 4; i++) {
+                            if (++pos == end || Character.digit(b.get(pos), 16) < 0) throw error("bad \\u escape");
+                        }
+                    }
+                    default -> throw error("bad escape");
+                }
+            }
+            pos++;
+        }
+        throw error("unterminated string");
+    }
+
+    private void literal(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (pos == end || b.get(pos) != word.charAt(i)) throw error("bad literal");
+            pos++;
+        }
+    }
+
+    private int number() {
+        int start = pos;
+        if (b.get(pos) == '-') pos++;
+        int digits = pos;
+        while (pos < end && b.get(pos) >= '0' && b.get(pos) <= '9') pos++;
+        if (pos == digits) throw error("unexpected character");
+        if (b.get(digits) == '0' && pos - digits > 1) throw error("leading zero");
+        int intEnd = pos;
+        boolean integral = true;
+        if (pos < end && b.get(pos) == '.') {
+            integral = false;
+            int frac = ++pos;
+            while (pos < end && b.get(pos) >= '0' && b.get(pos) <= '9') pos++;
+            if (pos == frac) throw error("bad number");
+        }
+        if (pos < end && (b.get(pos) == 'e' || b.get(pos) == 'E')) {
+            integral = false;
+            pos++;
+            if (pos < end && (b.get(pos) == '+' || b.get(pos) == '-')) pos++;
+            int exp = pos;
+            while (pos < end && b.get(pos) >= '0' && b.get(pos) <= '9') pos++;
+            if (pos == exp) throw error("bad number");
+        }
+        if (!integral) return NUMBER;
+        if (intEnd - digits < 10) {
+            intFits = true;
+        } else {
+            long v = Long.MAX_VALUE;
+            if (intEnd - digits <= 18) v = Long.parseLong(text(start, intEnd, StandardCharsets.US_ASCII));
+            intFits = v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE;
+        }
+        return INT;
+    }
+
+    private boolean bytesEqual(int at, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (b.get(at + i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    // only for messages and the odd long number, so the copy doesn't matter
+    private String text(int s, int e, Charset cs) {
+        byte[] out = new byte[e - s];
+        b.get(s, out);
+        return new String(out, cs);
+    }
+
+    private static byte[][] names(String... names) {
+        byte[][] out = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) out[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        return out;
+    }
+
+    private static String name(byte[][] names, int i) {
+        return new String(names[i], StandardCharsets.US_ASCII);
+    }
+}
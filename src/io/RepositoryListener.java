@@ -0,0 +1,16 @@
+package io;
+
+import model.Workout;
+
+// Notified by ObservableRepository after a write has gone through.
+// oldLine is the JSON line that was replaced or removed.
+public interface RepositoryListener {
+    void onAppend(Workout w);
+
+    void onReplace(int index, String oldLine, Workout replacement);
+
+    void onDelete(int index, String oldLine);
+
+    // the log was rewritten wholesale (dedupe, maintenance); rebuild anything derived from it
+    void onReload();
+}
@@ -0,0 +1,15 @@
+package io;
+
+import model.Workout;
+
+// A query result: the (possibly projected) workout plus the line it came from,
+// which is what replaceLine / deleteLine need.
+public class WorkoutHit {
+    public final int line;
+    public final Workout workout;
+
+    public WorkoutHit(int line, Workout workout) {
+        this.line = line;
+        this.workout = workout;
+    }
+}
@@ -0,0 +1,206 @@
+package io;
+
+import model.Belt;
+import model.Round;
+import model.Workout;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Filters + projection for WorkoutRepository.query.
+//
+// Workout-level filters (id, date range, workoutType) are checked against the
+// lazily decoded header fields before anything else is decoded. Round-level
+// filters (belt, partner age, duration) keep only the rounds that match, and drop
+// the workout when none do. Fields left out of the projection stay null.
+public class WorkoutQuery {
+    public static final Set<String> ALL_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "id", "date", "workoutType", "drills", "roundsCount", "rounds", "notes")));
+
+    String id;
+    String fromDate;   // ISO, inclusive
+    String toDate;     // ISO, inclusive
+    String workoutType;
+    Belt belt;
+    Integer minAge, maxAge;
+    Integer minDuration, maxDuration;
+    int limit = Integer.MAX_VALUE;
+    boolean latest = false;
+    Set<String> fields = ALL_FIELDS;
+
+    public static WorkoutQuery all() {
+        return new WorkoutQuery();
+    }
+
+    public WorkoutQuery id(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public WorkoutQuery date(String isoDate) {
+        return dateRange(isoDate, isoDate);
+    }
+
+    public WorkoutQuery dateRange(LocalDate from, LocalDate to) {
+        return dateRange(from == null ? null : from.toString(), to == null ? null : to.toString());
+    }
+
+    public WorkoutQuery dateRange(String from, String to) {
+        this.fromDate = from;
+        this.toDate = to;
+        return this;
+    }
+
+    public WorkoutQuery workoutType(String type) {
+        this.workoutType = type;
+        return this;
+    }
+
+    public WorkoutQuery belt(Belt belt) {
+        this.belt = belt;
+        return this;
+    }
+
+    public WorkoutQuery partnerAge(Integer min, Integer max) {
+        this.minAge = min;
+        this.maxAge = max;
+        return this;
+    }
+
+    public WorkoutQuery duration(Integer min, Integer max) {
+        this.minDuration = min;
+        this.maxDuration = max;
+        return this;
+    }
+
+    // stop after n matches (first n in file order)
+    public WorkoutQuery limit(int n) {
+        this.limit = n;
+        this.latest = false;
+        return this;
+    }
+
+    // keep only the last n matches (still returned in file order)
+    public WorkoutQuery latest(int n) {
+        this.limit = n;
+        this.latest = true;
+        return this;
+    }
+
+    public WorkoutQuery fields(String... names) {
+        Set<String> s = new HashSet<>(Arrays.asList(names));
+        for (String n : s) {
+            if (!ALL_FIELDS.contains(n)) throw new IllegalArgumentException("Unknown field: " + n);
+        }
+        this.fields = s;
+        return this;
+    }
+
+    public boolean hasRoundFilter() {
+        return belt != null || minAge != null || maxAge != null || minDuration != null || maxDuration != null;
+    }
+
+    public boolean hasDateFilter() {
+        return fromDate != null || toDate != null;
+    }
+
+    // ---------- evaluation ----------
+
+    boolean matchesHeader(String id, String date, String workoutType) {
+        if (this.id != null && !this.id.equals(id)) return false;
+        if (!matchesDate(date)) return false;
+        if (this.workoutType != null && !this.workoutType.equalsIgnoreCase(workoutType)) return false;
+        return true;
+    }
+
+    // ISO dates compare correctly as strings
+    boolean matchesDate(String date) {
+        if (fromDate == null && toDate == null) return true;
+        if (date == null) return false;
+        if (fromDate != null && date.compareTo(fromDate) < 0) return false;
+        if (toDate != null && date.compareTo(toDate) > 0) return false;
+        return true;
+    }
+
+    boolean matchesRound(Round r) {
+        if (belt != null && Belt.of(r.beltLevel) != belt) return false;
+        int age = r.partnerAge == null ? 0 : r.partnerAge;
+        if (minAge != null && age < minAge) return false;
+        if (maxAge != null && age > maxAge) return false;
+        int dur = r.roundDurationMinutes == null ? 0 : r.roundDurationMinutes;
+        if (minDuration != null && dur < minDuration) return false;
+        if (maxDuration != null && dur > maxDuration) return false;
+        return true;
+    }
+
+    // Decodes a record only as far as needed to decide, then only the projected fields.
+    // null when it doesn't match.
+    public Workout evaluate(LazyWorkout lw) {
+        if (!matchesHeader(lw.id(), lw.date(), lw.workoutType())) return null;
+
+        List<Round> matching = null;
+        if (hasRoundFilter()) {
+            matching = new ArrayList<>();
+            for (Round r : lw.rounds()) {
+                if (matchesRound(r)) matching.add(r);
+            }
+            if (matching.isEmpty()) return null;
+        }
+
+        Set<String> decodeNow = fields;
+        if (matching != null && fields.contains("rounds")) {
+            decodeNow = new HashSet<>(fields);
+            decodeNow.remove("rounds");
+        }
+        Workout w = lw.toWorkout(decodeNow);
+        if (decodeNow != fields) w.rounds = matching;
+        return w;
+    }
+
+    // Same as evaluate(LazyWorkout) for a record that is already decoded.
+    public Workout evaluate(Workout src) {
+        if (!matchesHeader(src.id, src.date, src.workoutType)) return null;
+
+        List<Round> rounds = src.rounds;
+        if (hasRoundFilter()) {
+            rounds = new ArrayList<>();
+            for (Round r : src.rounds) {
+                if (matchesRound(r)) rounds.add(r);
+            }
+            if (rounds.isEmpty()) return null;
+        }
+
+        Workout w = new Workout();
+        if (fields.contains("id")) w.id = src.id;
+        if (fields.contains("date")) w.date = src.date;
+        if (fields.contains("workoutType")) w.workoutType = src.workoutType;
+        if (fields.contains("drills")) w.drills = src.drills;
+        if (fields.contains("roundsCount")) w.roundsCount = src.roundsCount;
+        if (fields.contains("rounds")) w.rounds = new ArrayList<>(rounds);
+        if (fields.contains("notes")) w.notes = src.notes;
+        return w;
+    }
+
+    // Plain scan over already-loaded lines; repositories with indexes do better.
+    public List<WorkoutHit> scan(List<String> lines) {
+        List<WorkoutHit> hits = new ArrayList<>();
+        if (latest) {
+            for (int i = lines.size() - 1; i >= 0 && hits.size() < limit; i--) {
+                Workout w = evaluate(LazyWorkout.of(lines.get(i)));
+                if (w != null) hits.add(new WorkoutHit(i, w));
+            }
+            Collections.reverse(hits);
+        } else {
+            for (int i = 0; i < lines.size() && hits.size() < limit; i++) {
+                Workout w = evaluate(LazyWorkout.of(lines.get(i)));
+                if (w != null) hits.add(new WorkoutHit(i, w));
+            }
+        }
+        return hits;
+    }
+}
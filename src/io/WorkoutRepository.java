@@ -1,16 +1,71 @@
 package io;
 
 import model.Workout;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface WorkoutRepository {
     void append(Workout w) throws Exception;
 
+    // append unless the same workout is already logged; false when it was skipped
+    default boolean appendIfAbsent(Workout w) throws Exception {
+        append(w);
+        return true;
+    }
+
     List<String> readAllJsonLines() throws Exception;
 
-    void replaceLine(int index, Workout replacement) throws Exception;
+    // the file writes go to
+    Path dataFile();
+
+    // returns the JSON line that was replaced
+    String replaceLine(int index, Workout replacement) throws Exception;
+
+    // NEW: delete a workout at the given line index; returns the JSON line that was removed
+    String deleteLine(int index) throws Exception;
+
+    // drop records whose content repeats an earlier one; returns how many were removed
+    int dedupe() throws Exception;
+
+    // rewrite the log in date order; returns how many records were sorted (0 if already in order)
+    int sortByDate() throws Exception;
+
+    // check every record's checksum and shape; changes nothing when problems are found
+    LogVerifier.Report verify() throws Exception;
+
+    // verify, quarantine the bad records and rebuild from the rest
+    LogVerifier.Report repair() throws Exception;
+
+    // every record decoded, in line order
+    default List<Workout> readAllWorkouts() throws Exception {
+        List<Workout> out = new ArrayList<>();
+        for (String line : readAllJsonLines()) out.add(JsonlRepository.parseWorkout(line));
+        return out;
+    }
+
+    // Visits every record in order. Implementations that can stream from disk do,
+    // so a full pass doesn't need the whole log in memory.
+    default void forEachWorkout(Consumer<Workout> visitor) throws Exception {
+        for (Workout w : readAllWorkouts()) visitor.accept(w);
+    }
+
+    default int count() throws Exception {
+        return readAllJsonLines().size();
+    }
+
+    // filtered / projected read; implementations push the filters down where they can
+    default List<WorkoutHit> query(WorkoutQuery q) throws Exception {
+        return q.scan(readAllJsonLines());
+    }
 
-    // NEW: delete a workout at the given line index
-    void deleteLine(int index) throws Exception;
+    // Whichever store the directory holds: binary once it has been migrated, JSONL otherwise.
+    static WorkoutRepository open(Path dataDir) throws Exception {
+        if (Files.exists(BinaryRepository.binFile(dataDir))) return new BinaryRepository(dataDir);
+        return new JsonlRepository(dataDir);
+    }
 }
 
@@ -0,0 +1,29 @@
+package model;
+
+public enum Belt {
+    WHITE("White"),
+    BLUE("Blue"),
+    PURPLE("Purple"),
+    BROWN("Brown"),
+    BLACK("Black"),
+    OTHER("Other/Unknown");
+
+    public final String label;
+
+    Belt(String label) {
+        this.label = label;
+    }
+
+    // lenient: anything we don't recognise lands in OTHER
+    public static Belt of(String raw) {
+        String norm = (raw == null ? "" : raw.trim().toLowerCase());
+        return switch (norm) {
+            case "white" -> WHITE;
+            case "blue" -> BLUE;
+            case "purple" -> PURPLE;
+            case "brown" -> BROWN;
+            case "black" -> BLACK;
+            default -> OTHER;
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package stats;
+
+import io.WorkoutHit;
+import model.Belt;
+import model.Round;
+import model.Workout;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Group-by aggregates over query results.
+public class GroupBy {
+
+    public enum Key { MONTH, YEAR, WORKOUT_TYPE, BELT }
+
+    // BELT groups individual rounds (a workout counts once per belt it faced);
+    // the other keys group whole workouts.
+    public static Map<String, TrainingTotals> aggregate(List<WorkoutHit> hits, Key key) {
+        List<Workout> workouts = new ArrayList<>(hits.size());
+        for (WorkoutHit h : hits) workouts.add(h.workout);
+        return aggregateWorkouts(workouts, key);
+    }
+
+    public static Map<String, TrainingTotals> aggregateWorkouts(List<Workout> workouts, Key key) {
+        Map<String, TrainingTotals> out = new TreeMap<>();
+        for (Workout w : workouts) {
+            if (key == Key.BELT) {
+                boolean gi = "Gi".equalsIgnoreCase(w.workoutType);
+                boolean noGi = "No-gi".equalsIgnoreCase(w.workoutType);
+                Map<Belt, Boolean> seen = new EnumMap<>(Belt.class);
+                for (Round r : w.rounds) {
+                    Belt b = Belt.of(r.beltLevel);
+                    TrainingTotals t = out.computeIfAbsent(b.label, k -> new TrainingTotals());
+                    if (seen.put(b, Boolean.TRUE) == null) t.workouts++;
+                    t.addRound(r, gi, noGi, 1);
+                }
+            } else {
+                out.computeIfAbsent(keyOf(w, key), k -> new TrainingTotals()).add(w, 1);
+            }
+        }
+        return out;
+    }
+
+    private static String keyOf(Workout w, Key key) {
+        String date = w.date == null ? "" : w.date;
+        return switch (key) {
+            case MONTH -> date.length() >= 7 ? date.substring(0, 7) : "(unknown)";
+            case YEAR -> date.length() >= 4 ? date.substring(0, 4) : "(unknown)";
+            case WORKOUT_TYPE -> w.workoutType == null || w.workoutType.isEmpty() ? "(unknown)" : w.workoutType;
+            case BELT -> throw new IllegalStateException("BELT is grouped per round");
+        };
+    }
+}
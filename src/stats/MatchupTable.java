@@ -0,0 +1,334 @@
+package stats;
+
+import io.JsonlRepository;
+import io.RepositoryListener;
+import io.WorkoutRepository;
+import model.Belt;
+import model.Round;
+import model.Workout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Precomputed matchup cube over (partner belt, partner size, partner age, workout type).
+//
+// Every cell lives at one offset in flat int arrays, so a drill-down is a loop
+// over a few hundred ints however long the history is. Submission names are
+// interned to small ids; their per-cell counts sit in one array laid out
+// [subId * CELLS + cell], which only has to grow when a new name shows up.
+// Built with one scan on first use, then kept current from repository events.
+public class MatchupTable implements RepositoryListener {
+
+    public enum Dim { BELT, SIZE, AGE, TYPE }
+
+    public static final String[] SIZE_LABELS = {"Light", "Medium", "Heavy", "Unknown"};
+    public static final String[] AGE_LABELS = {"<18", "18-29", "30-39", "40-49", "50+", "Unknown"};
+    public static final String[] TYPE_LABELS = {"Gi", "No-gi", "Unknown"};
+
+    private static final int BELTS = Belt.values().length;
+    private static final int SIZES = SIZE_LABELS.length;
+    private static final int AGES = AGE_LABELS.length;
+    private static final int TYPES = TYPE_LABELS.length;
+    private static final int CELLS = BELTS * SIZES * AGES * TYPES;
+
+    // one slot per cell
+    private final int[] rounds = new int[CELLS];
+    private final int[] subsFor = new int[CELLS];
+    private final int[] subsAgainst = new int[CELLS];
+    private final int[] minutes = new int[CELLS];
+    private final int[] timedRounds = new int[CELLS];
+
+    // submission name dictionary and per-cell counts
+    private final Map<String, Integer> subIds = new HashMap<>();
+    private final List<String> subNames = new ArrayList<>();
+    private int[] forCounts = new int[0];
+    private int[] againstCounts = new int[0];
+
+    private final WorkoutRepository source;
+    private boolean loaded = false;
+
+    public MatchupTable(WorkoutRepository source) {
+        this.source = source;
+    }
+
+    // Totals for one drill-down. Pass -1 for any dimension you don't want to filter on.
+    public synchronized MatchupStats query(int belt, int size, int age, int type) throws Exception {
+        ensureLoaded();
+        MatchupStats out = new MatchupStats(subNames.size());
+        for (int c = 0; c < CELLS; c++) {
+            if (rounds[c] == 0 || !matches(c, belt, size, age, type)) continue;
+            out.add(this, c);
+        }
+        return out;
+    }
+
+    // One row per value of dim, under the given filters (-1 = any).
+    public synchronized MatchupStats[] breakdown(Dim dim, int belt, int size, int age, int type) throws Exception {
+        ensureLoaded();
+        MatchupStats[] rows = new MatchupStats[dimSize(dim)];
+        for (int i = 0; i < rows.length; i++) rows[i] = new MatchupStats(subNames.size());
+        for (int c = 0; c < CELLS; c++) {
+            if (rounds[c] == 0 || !matches(c, belt, size, age, type)) continue;
+            rows[coord(c, dim)].add(this, c);
+        }
+        return rows;
+    }
+
+    public static int dimSize(Dim dim) {
+        return switch (dim) {
+            case BELT -> BELTS;
+            case SIZE -> SIZES;
+            case AGE -> AGES;
+            case TYPE -> TYPES;
+        };
+    }
+
+    public static String label(Dim dim, int i) {
+        return switch (dim) {
+            case BELT -> Belt.values()[i].label;
+            case SIZE -> SIZE_LABELS[i];
+            case AGE -> AGE_LABELS[i];
+            case TYPE -> TYPE_LABELS[i];
+        };
+    }
+
+    synchronized String subName(int id) {
+        return subNames.get(id);
+    }
+
+    // ---------- bucketing ----------
+
+    // free text: light/med/heavy, or a weight in lbs
+    public static int sizeBucket(String raw) {
+        String s = raw == null ? "" : raw.trim().toLowerCase();
+        if (s.isEmpty()) return 3;
+        if (s.startsWith("l")) return 0;
+        if (s.startsWith("m")) return 1;
+        if (s.startsWith("h")) return 2;
+        int lbs = JsonlRepository.safeInt(s.replaceAll("[^0-9]", ""));
+        if (lbs <= 0) return 3;
+        if (lbs < 155) return 0;
+        if (lbs < 195) return 1;
+        return 2;
+    }
+
+    public static int ageBucket(Integer age) {
+        int a = age == null ? 0 : age;
+        if (a <= 0) return 5;
+        if (a < 18) return 0;
+        if (a < 30) return 1;
+        if (a < 40) return 2;
+        if (a < 50) return 3;
+        return 4;
+    }
+
+    public static int typeIndex(String workoutType) {
+        if ("Gi".equalsIgnoreCase(workoutType)) return 0;
+        if ("No-gi".equalsIgnoreCase(workoutType)) return 1;
+        return 2;
+    }
+
+    private static int cell(int belt, int size, int age, int type) {
+        return ((belt * SIZES + size) * AGES + age) * TYPES + type;
+    }
+
+    private static int coord(int cell, Dim dim) {
+        return switch (dim) {
+            case TYPE -> cell % TYPES;
+            case AGE -> (cell / TYPES) % AGES;
+            case SIZE -> (cell / (TYPES * AGES)) % SIZES;
+            case BELT -> cell / (TYPES * AGES * SIZES);
+        };
+    }
+
+    private static boolean matches(int c, int belt, int size, int age, int type) {
+        return (belt < 0 || coord(c, Dim.BELT) == belt)
+                && (size < 0 || coord(c, Dim.SIZE) == size)
+                && (age < 0 || coord(c, Dim.AGE) == age)
+                && (type < 0 || coord(c, Dim.TYPE) == type);
+    }
+
+    // ---------- maintenance ----------
+
+    private void ensureLoaded() throws Exception {
+        if (loaded) return;
+        clear();
+        for (Workout w : source.readAllWorkouts()) {
+            apply(w, 1);
+        }
+        loaded = true;
+    }
+
+    public synchronized void invalidate() {
+        clear();
+        loaded = false;
+    }
+
+    private void clear() {
+        Arrays.fill(rounds, 0);
+        Arrays.fill(subsFor, 0);
+        Arrays.fill(subsAgainst, 0);
+        Arrays.fill(minutes, 0);
+        Arrays.fill(timedRounds, 0);
+        Arrays.fill(forCounts, 0);
+        Arrays.fill(againstCounts, 0);
+    }
+
+    private void apply(Workout w, int sign) {
+        int type = typeIndex(w.workoutType);
+        for (Round r : w.rounds) {
+            int c = cell(Belt.of(r.beltLevel).ordinal(), sizeBucket(r.partnerSize), ageBucket(r.partnerAge), type);
+            rounds[c] += sign;
+            subsFor[c] += sign * nz(r.timesYouSubmittedPartner);
+            subsAgainst[c] += sign * nz(r.timesYouWereSubmitted);
+            int dur = nz(r.roundDurationMinutes);
+            if (dur > 0) {
+                minutes[c] += sign * dur;
+                timedRounds[c] += sign;
+            }
+            // slot first: interning a new name may reallocate the count arrays
+            for (String name : splitSubs(r.submissionTypesFor)) {
+                int slot = subSlot(name, c);
+                forCounts[slot] += sign;
+            }
+            for (String name : splitSubs(r.submissionTypesAgainst)) {
+                int slot = subSlot(name, c);
+                againstCounts[slot] += sign;
+            }
+        }
+    }
+
+    private int subSlot(String name, int cell) {
+        Integer id = subIds.get(name);
+        if (id == null) {
+            id = subNames.size();
+            subIds.put(name, id);
+            subNames.add(name);
+            int needed = subNames.size() * CELLS;
+            if (forCounts.length < needed) {
+                int cap = Math.max(needed, forCounts.length * 2);
+                forCounts = Arrays.copyOf(forCounts, cap);
+                againstCounts = Arrays.copyOf(againstCounts, cap);
+            }
+        }
+        return id * CELLS + cell;
+    }
+
+    private static List<String> splitSubs(String csv) {
+        List<String> out = new ArrayList<>();
+        if (csv == null) return out;
+        for (String part : csv.split(",")) {
+            String s = part.trim().toLowerCase();
+            if (!s.isEmpty()) out.add(s);
+        }
+        return out;
+    }
+
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+
+    // ---------- repository events ----------
+
+    @Override
+    public synchronized void onAppend(Workout w) {
+        if (loaded) apply(w, 1);
+    }
+
+    @Override
+    public synchronized void onReplace(int index, String oldLine, Workout replacement) {
+        if (!loaded) return;
+        if (oldLine == null) {
+            invalidate();
+            return;
+        }
+        apply(JsonlRepository.parseWorkout(oldLine), -1);
+        apply(replacement, 1);
+    }
+
+    @Override
+    public synchronized void onDelete(int index, String oldLine) {
+        if (!loaded) return;
+        if (oldLine == null) {
+            invalidate();
+            return;
+        }
+        apply(JsonlRepository.parseWorkout(oldLine), -1);
+    }
+
+    @Override
+    public void onReload() {
+        invalidate();
+    }
+
+    // ---------- results ----------
+
+    // Sum over a set of cells. Submission counts are indexed by interned id.
+    public static class MatchupStats {
+        public int rounds;
+        public int subsFor;
+        public int subsAgainst;
+        public int minutes;
+        public int timedRounds;
+        private final int[] forBySub;
+        private final int[] againstBySub;
+        private MatchupTable table;
+
+        MatchupStats(int subCount) {
+            this.forBySub = new int[subCount];
+            this.againstBySub = new int[subCount];
+        }
+
+        void add(MatchupTable t, int c) {
+            table = t;
+            rounds += t.rounds[c];
+            subsFor += t.subsFor[c];
+            subsAgainst += t.subsAgainst[c];
+            minutes += t.minutes[c];
+            timedRounds += t.timedRounds[c];
+            for (int s = 0; s < forBySub.length; s++) {
+                forBySub[s] += t.forCounts[s * CELLS + c];
+                againstBySub[s] += t.againstCounts[s * CELLS + c];
+            }
+        }
+
+        public double subForRate() {
+            return rounds == 0 ? 0.0 : (double) subsFor / rounds;
+        }
+
+        public double subAgainstRate() {
+            return rounds == 0 ? 0.0 : (double) subsAgainst / rounds;
+        }
+
+        public double avgDuration() {
+            return timedRounds == 0 ? 0.0 : (double) minutes / timedRounds;
+        }
+
+        public List<String> topFor(int k) {
+            return top(forBySub, k);
+        }
+
+        public List<String> topAgainst(int k) {
+            return top(againstBySub, k);
+        }
+
+        // "name xN", most frequent first
+        private List<String> top(int[] counts, int k) {
+            List<String> out = new ArrayList<>();
+            boolean[] taken = new boolean[counts.length];
+            for (int n = 0; n < k; n++) {
+                int best = -1;
+                for (int s = 0; s < counts.length; s++) {
+                    if (!taken[s] && counts[s] > 0 && (best < 0 || counts[s] > counts[best])) best = s;
+                }
+                if (best < 0) break;
+                taken[best] = true;
+                out.add(table.subName(best) + " x" + counts[best]);
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package stats;
+
+import io.JsonlRepository;
+import io.RepositoryListener;
+import io.WorkoutRepository;
+import model.Workout;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Keeps per-day training buckets and derives week / month / year totals from them.
+// The buckets are built with one scan on first use and then kept current from
+// repository events, so trend queries never rescan the log.
+public class RollupEngine implements RepositoryListener {
+
+    public enum Period { WEEK, MONTH, YEAR }
+
+    private final WorkoutRepository source;
+    private final TreeMap<LocalDate, TrainingTotals> days = new TreeMap<>();
+    private boolean loaded = false;
+
+    public RollupEngine(WorkoutRepository source) {
+        this.source = source;
+    }
+
+    // Totals per period between from and to (inclusive), keyed by the first day of each period.
+    // Periods without any training are left out.
+    public synchronized SortedMap<LocalDate, TrainingTotals> rollup(Period period, LocalDate from, LocalDate to) throws Exception {
+        ensureLoaded();
+        TreeMap<LocalDate, TrainingTotals> out = new TreeMap<>();
+        for (Map.Entry<LocalDate, TrainingTotals> e : days.subMap(from, true, to, true).entrySet()) {
+            out.computeIfAbsent(periodStart(period, e.getKey()), k -> new TrainingTotals()).merge(e.getValue());
+        }
+        return out;
+    }
+
+    public synchronized TrainingTotals total(LocalDate from, LocalDate to) throws Exception {
+        ensureLoaded();
+        TrainingTotals t = new TrainingTotals();
+        for (TrainingTotals day : days.subMap(from, true, to, true).values()) t.merge(day);
+        return t;
+    }
+
+    public static LocalDate periodStart(Period period, LocalDate d) {
+        return switch (period) {
+            case WEEK -> d.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> d.withDayOfMonth(1);
+            case YEAR -> d.withDayOfYear(1);
+        };
+    }
+
+    // forget everything; the next query rescans the repository
+    public synchronized void invalidate() {
+        days.clear();
+        loaded = false;
+    }
+
+    private void ensureLoaded() throws Exception {
+        if (loaded) return;
+        days.clear();
+        for (Workout w : source.readAllWorkouts()) {
+            apply(w, 1);
+        }
+        loaded = true;
+    }
+
+    private void apply(Workout w, int sign) {
+        LocalDate d = parseDate(w.date);
+        if (d == null) return; // undated records can't be bucketed
+        TrainingTotals day = days.computeIfAbsent(d, k -> new TrainingTotals());
+        day.add(w, sign);
+        if (day.isEmpty()) days.remove(d);
+    }
+
+    private static LocalDate parseDate(String s) {
+        if (s == null) return null;
+        try {
+            return LocalDate.parse(s);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ---------- repository events ----------
+    // Before the first load there is nothing to keep in sync: the load will see the write.
+
+    @Override
+    public synchronized void onAppend(Workout w) {
+        if (loaded) apply(w, 1);
+    }
+
+    @Override
+    public synchronized void onReplace(int index, String oldLine, Workout replacement) {
+        if (!loaded) return;
+        if (oldLine == null) {
+            invalidate();
+            return;
+        }
+        apply(JsonlRepository.parseWorkout(oldLine), -1);
+        apply(replacement, 1);
+    }
+
+    @Override
+    public synchronized void onDelete(int index, String oldLine) {
+        if (!loaded) return;
+        if (oldLine == null) {
+            invalidate();
+            return;
+        }
+        apply(JsonlRepository.parseWorkout(oldLine), -1);
+    }
+
+    @Override
+    public void onReload() {
+        invalidate();
+    }
+}
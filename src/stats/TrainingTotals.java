@@ -0,0 +1,65 @@
+package stats;
+
+import model.Belt;
+import model.Round;
+import model.Workout;
+
+// Additive counters for a slice of training (a day, a month, a group...).
+// add(w, -1) backs a workout out again, which is how edits and deletes are applied.
+public class TrainingTotals {
+    public int workouts;
+    public int rounds;
+    public int minutes;
+    public int subsFor;
+    public int subsAgainst;
+    public int giRounds;
+    public int noGiRounds;
+    public final int[] beltRounds = new int[Belt.values().length];
+
+    public void add(Workout w, int sign) {
+        workouts += sign;
+        boolean gi = "Gi".equalsIgnoreCase(w.workoutType);
+        boolean noGi = "No-gi".equalsIgnoreCase(w.workoutType);
+        for (Round r : w.rounds) {
+            addRound(r, gi, noGi, sign);
+        }
+    }
+
+    public void addRound(Round r, boolean gi, boolean noGi, int sign) {
+        rounds += sign;
+        minutes += sign * nz(r.roundDurationMinutes);
+        subsFor += sign * nz(r.timesYouSubmittedPartner);
+        subsAgainst += sign * nz(r.timesYouWereSubmitted);
+        if (gi) giRounds += sign;
+        if (noGi) noGiRounds += sign;
+        beltRounds[Belt.of(r.beltLevel).ordinal()] += sign;
+    }
+
+    public void merge(TrainingTotals o) {
+        workouts += o.workouts;
+        rounds += o.rounds;
+        minutes += o.minutes;
+        subsFor += o.subsFor;
+        subsAgainst += o.subsAgainst;
+        giRounds += o.giRounds;
+        noGiRounds += o.noGiRounds;
+        for (int i = 0; i < beltRounds.length; i++) beltRounds[i] += o.beltRounds[i];
+    }
+
+    public boolean isEmpty() {
+        return workouts == 0 && rounds == 0;
+    }
+
+    // submissions per round (0 when there were no rounds)
+    public double subForRate() {
+        return rounds == 0 ? 0.0 : (double) subsFor / rounds;
+    }
+
+    public double subAgainstRate() {
+        return rounds == 0 ? 0.0 : (double) subsAgainst / rounds;
+    }
+
+    private static int nz(Integer i) {
+        return i == null ? 0 : i;
+    }
+}